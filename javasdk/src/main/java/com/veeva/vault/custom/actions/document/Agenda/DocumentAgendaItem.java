@@ -1,8 +1,8 @@
 package com.veeva.vault.custom.actions.document.Agenda;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
 import com.veeva.vault.custom.udc.DocVersionIdParts;
-import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.sdk.api.action.DocumentAction;
 import com.veeva.vault.sdk.api.action.DocumentActionContext;
@@ -11,18 +11,22 @@ import com.veeva.vault.sdk.api.action.Usage;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
-import com.veeva.vault.sdk.api.data.ReadRecordsResponse;
 import com.veeva.vault.sdk.api.data.Record;
 import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 /**
- * This class creates or updates Agenda Items (agenda_item__c) as needed for the contextual Document.
+ * This class creates or updates Agenda Items (agenda_item__c) as needed for the contextual Documents.
+ *
+ * All documents in the context are handled together: the existing Agenda Items and the Agendas'
+ * meeting dates are each read with one query, the Agenda Items' document info is read for all
+ * documents together (see AgendaApp.setAgendaItemsDocumentInfo), the Agenda Items are saved in
+ * batches, and the documents' meeting dates are updated with one save per Agenda.
  */
 
 @DocumentActionInfo(
@@ -34,83 +38,99 @@ public class DocumentAgendaItem implements DocumentAction {
 	
     public void execute(DocumentActionContext documentActionContext) {
 
-    	DocumentVersion docVersion = documentActionContext.getDocumentVersions().get(0);
-			String docVersionId = docVersion.getValue("version_id", ValueType.STRING);
-
-			List<String> agendaIds = docVersion.getValue("agenda__c", ValueType.REFERENCES);
-			if (agendaIds == null || agendaIds.size() == 0) {
-				updateDocumentMeetingDate(null, docVersionId);
-				return;
+			List<DocumentVersion> docVersions = documentActionContext.getDocumentVersions();
+
+			// the first agenda of each document, keyed by document version id (null if none)
+			Map<String, String> docAgendaIds = VaultCollections.newMap();
+			List<String> docVersionIds = VaultCollections.newList();
+			List<String> agendaIds = VaultCollections.newList();
+
+			for (DocumentVersion docVersion : docVersions) {
+				String docVersionId = docVersion.getValue("version_id", ValueType.STRING);
+				List<String> docAgendas = docVersion.getValue("agenda__c", ValueType.REFERENCES);
+				String agendaId = (docAgendas == null || docAgendas.size() == 0) ? null : docAgendas.get(0);
+				docVersionIds.add(docVersionId);
+				docAgendaIds.put(docVersionId, agendaId);
+				if (agendaId != null && !agendaIds.contains(agendaId)) {
+					agendaIds.add(agendaId);
+				}
 			}
-			String agendaId = agendaIds.get(0);
 
-			String agendaItemId = getAssociatedAgendaItemId(agendaId, docVersionId);
+			Map<String, String> agendaItemIds = AgendaApp.findAgendaItemIds(docVersionIds);
+			Map<String, LocalDate> meetingDates = AgendaApp.getAgendaMeetingDates(agendaIds);
+
+			List<Record> agendaItems = VaultCollections.newList();
+
+			// ids of the documents whose meeting date is to be set, keyed by agenda id ("" for no agenda)
+			Map<String, List<String>> meetingDateDocIds = VaultCollections.newMap();
+
+			for (String docVersionId : docVersionIds) {
+
+				String agendaId = docAgendaIds.get(docVersionId);
+				DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
+
+				if (agendaId == null) {
+					addDocId(meetingDateDocIds, "", docVersionIdParts.id);
+					continue;
+				}
+
+				String agendaItemId = agendaItemIds.get(AgendaApp.agendaItemKey(agendaId, docVersionId));
+
+				if (!associatedAgendaItemExists(agendaItemId)) {
+					agendaItems.add(newAgendaItem(agendaId, docVersionIdParts));
+					addDocId(meetingDateDocIds, agendaId, docVersionIdParts.id);
+				} else {
+					agendaItems.add(updatedAgendaItem(agendaItemId, docVersionIdParts));
+				}
+			}
 
-			if (!associatedAgendaItemExists(agendaItemId)) {
-				createAgendaItem(agendaId, docVersionId);
-				updateDocumentMeetingDate(agendaId, docVersionId);
-			} else {
-				updateAgendaItem(agendaItemId, docVersionId);
+			AgendaApp.setAgendaItemsDocumentInfo(agendaItems);
+
+			// the document info is set above, so the Agenda Item trigger does not read it again
+			AgendaItemContext context = AgendaItemContext.get();
+			context.setDocumentInfoSet(true);
+			try {
+				for (List<Record> batch : Util.partition(agendaItems, Util.RECORD_BATCH_SIZE)) {
+					Util.batchSaveRecords(batch);
+				}
+			} finally {
+				context.setDocumentInfoSet(false);
 			}
 
+			AgendaApp.updateDocumentMeetingDates(meetingDateDocIds, meetingDates);
+
     }
 
-		private static void createAgendaItem(String agendaId, String docVersionId) {
+		private static Record newAgendaItem(String agendaId, DocVersionIdParts docVersionIdParts) {
 
-			DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
 			BigDecimal docId = BigDecimal.valueOf((long)(Integer.parseInt(docVersionIdParts.id)));
 
 			RecordService recordService = ServiceLocator.locate(RecordService.class);
 			Record record = recordService.newRecord("agenda_item__c");
 			record.setValue("agenda__c", agendaId);
 			record.setValue("document_unbound__c", docId);
-			Util.saveRecord(record);
 
+			return record;
 		}
 
-		private static void updateAgendaItem(String agendaItemId, String docVersionId) {
+		private static Record updatedAgendaItem(String agendaItemId, DocVersionIdParts docVersionIdParts) {
 
-			DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
 			BigDecimal docId = BigDecimal.valueOf((long)(Integer.parseInt(docVersionIdParts.id)));
 
 			RecordService recordService = ServiceLocator.locate(RecordService.class);
 			Record record = recordService.newRecordWithId("agenda_item__c", agendaItemId);
+			record.setValue("document_unbound__c", docId);
 
-			AgendaApp.setAgendaItemDocumentInfo(record, docId);
-
-			Util.saveRecord(record);
-
+			return record;
 		}
 
-		private static void updateDocumentMeetingDate(String agendaId, String docVersionId) {
-
-			DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
-			LocalDate meetingDate = null;
-
-			if (agendaId != null) {
-				RecordService recordService = ServiceLocator.locate(RecordService.class);
-				Record record = recordService.newRecordWithId("agenda__c", agendaId);
-				ReadRecordsResponse response = recordService.readRecords(VaultCollections.asList(record));
-				record = response.getRecords().get(agendaId);
-				meetingDate = record.getValue("meeting_date__c", ValueType.DATE);
+		private static void addDocId(Map<String, List<String>> docIdsByAgenda, String agendaId, String docId) {
+			if (!docIdsByAgenda.containsKey(agendaId)) {
+				docIdsByAgenda.put(agendaId, VaultCollections.newList());
 			}
-
-			AgendaApp.updateDocumentMeetingDate(meetingDate, VaultCollections.asList(docVersionIdParts.id));
+			docIdsByAgenda.get(agendaId).add(docId);
 		}
 
-  	private static String getAssociatedAgendaItemId(String agendaId, String docVersionId) {
-		  QueryExecutionResult result = QueryUtil.queryOne(
-	  		"select id from agenda_item__c " +
-	  			" where agenda__c = '"+agendaId+"' " +
-	  			"   and document__c = '"+docVersionId+"'"
-		  );
-			if (result != null) {
-				return result.getValue("id", ValueType.STRING);
-			} else {
-				return null;
-			}
-  	}
-
 	  private static boolean associatedAgendaItemExists(String agendaItemId) {
 		  return (agendaItemId != null);
 	  }
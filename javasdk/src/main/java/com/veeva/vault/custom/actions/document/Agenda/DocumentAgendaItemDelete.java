@@ -1,6 +1,6 @@
 package com.veeva.vault.custom.actions.document.Agenda;
 
-import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.AgendaApp;
 import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.sdk.api.action.DocumentAction;
 import com.veeva.vault.sdk.api.action.DocumentActionContext;
@@ -8,15 +8,18 @@ import com.veeva.vault.sdk.api.action.DocumentActionInfo;
 import com.veeva.vault.sdk.api.action.Usage;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.Record;
 import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.util.List;
+import java.util.Map;
 
 /**
- * This class deletes Agenda Items (agenda_item__c) for the contextual Document.
+ * This class deletes Agenda Items (agenda_item__c) for the contextual Documents.
+ *
+ * The Agenda Items of all documents in the context are found with one query and deleted in batches.
  */
 
 @DocumentActionInfo(
@@ -28,46 +31,43 @@ public class DocumentAgendaItemDelete implements DocumentAction {
 	
     public void execute(DocumentActionContext documentActionContext) {
 
-    	DocumentVersion docVersion = documentActionContext.getDocumentVersions().get(0);
+			// the first agenda of each document, keyed by document version id
+			Map<String, String> docAgendaIds = VaultCollections.newMap();
 
-			List<String> agendaIds = docVersion.getValue("agenda__c", ValueType.REFERENCES);
-			if (agendaIds == null || agendaIds.size() == 0) {
+			for (DocumentVersion docVersion : documentActionContext.getDocumentVersions()) {
+				List<String> agendaIds = docVersion.getValue("agenda__c", ValueType.REFERENCES);
+				if (agendaIds == null || agendaIds.size() == 0) {
+					continue;
+				}
+				docAgendaIds.put(docVersion.getValue("version_id", ValueType.STRING), agendaIds.get(0));
+			}
+
+			if (docAgendaIds.isEmpty()) {
 				return;
 			}
-			String agendaId = agendaIds.get(0);
 
-			String docVersionId = docVersion.getValue("version_id", ValueType.STRING);
-			String agendaItemId = getAssociatedAgendaItemId(agendaId, docVersionId);
+			Map<String, String> agendaItemIds = AgendaApp.findAgendaItemIds(Util.toList(docAgendaIds.keySet()));
 
-			if (associatedAgendaItemExists(agendaItemId)) {
-				deleteAssociatedAgendaItem(agendaItemId);
-			}
+			RecordService recordService = ServiceLocator.locate(RecordService.class);
+			List<Record> records = VaultCollections.newList();
 
-    }
+			for (String docVersionId : docAgendaIds.keySet()) {
+				String agendaItemId = agendaItemIds.get(AgendaApp.agendaItemKey(docAgendaIds.get(docVersionId), docVersionId));
+				if (associatedAgendaItemExists(agendaItemId)) {
+					records.add(recordService.newRecordWithId("agenda_item__c", agendaItemId));
+				}
+			}
 
-  	private static String getAssociatedAgendaItemId(String agendaId, String docVersionId) {
-		  QueryExecutionResult result = QueryUtil.queryOne(
-	  		"select id from agenda_item__c " +
-	  			" where agenda__c = '"+agendaId+"' " +
-	  			"   and document__c = '"+docVersionId+"'"
-		  );
-			if (result != null) {
-				return result.getValue("id", ValueType.STRING);
-			} else {
-				return null;
+			for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+				Util.batchDeleteRecords(batch);
 			}
-  	}
+
+    }
 
 	  private static boolean associatedAgendaItemExists(String agendaItemId) {
 		  return (agendaItemId != null);
 	  }
 
-	  private static void deleteAssociatedAgendaItem(String agendaItemId) {
-			RecordService recordService = ServiceLocator.locate(RecordService.class);
-			Record record = recordService.newRecordWithId("agenda_item__c", agendaItemId);
-			Util.deleteRecord(record);
-	  }
-
 	  public boolean isExecutable(DocumentActionContext documentActionContext) {
 	    return true;
 	  }
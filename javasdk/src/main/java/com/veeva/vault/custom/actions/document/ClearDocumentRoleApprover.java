@@ -1,5 +1,8 @@
 package com.veeva.vault.custom.actions.document;
 
+import com.veeva.vault.custom.udc.ParameterSetRegistry;
+import com.veeva.vault.custom.udc.ParameterSetSnapshot;
+import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.sdk.api.action.DocumentAction;
 import com.veeva.vault.sdk.api.action.DocumentActionContext;
 import com.veeva.vault.sdk.api.action.DocumentActionInfo;
@@ -14,45 +17,69 @@ import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
 import java.util.List;
 
 /**
- * This action is used to clear all users out of the Approver role for a Document.
+ * This action is used to clear all users out of the Approver role for each of the selected Documents.
+ *
+ * The role defaults to "approver__c", and can be changed with parameter "roleName" in the record named
+ * "ClearDocumentRole" in object "VPROC Parameter Set".  Roles are read and updated in batches of up to
+ * Util.DOCUMENT_ROLES_BATCH_SIZE documents.
  */
 
 @DocumentActionInfo(
   label = "Clear Document Role 'Approver'"
 )
 public class ClearDocumentRoleApprover implements DocumentAction {
-	
+
+	private static final String PARAMETER_SET_NAME = "ClearDocumentRole";
+	private static final String DEFAULT_ROLE_NAME = "approver__c";
+
     public void execute(DocumentActionContext documentActionContext) {
 
 			DocumentRoleService documentRoleService = ServiceLocator.locate(DocumentRoleService.class);
 
 		 	List<DocumentVersion> documentVersions = documentActionContext.getDocumentVersions();
 
-			String roleName = "approver__c";
+			String roleName = getRoleName();
 
-			GetDocumentRolesResponse getDocumentRolesResponse = documentRoleService.getDocumentRoles(
-				documentVersions, roleName
-			);
+			for (List<DocumentVersion> batch : Util.partition(documentVersions, Util.DOCUMENT_ROLES_BATCH_SIZE)) {
 
-			DocumentRole documentRole = getDocumentRolesResponse.getDocumentRole(documentVersions.get(0));
+				GetDocumentRolesResponse getDocumentRolesResponse = documentRoleService.getDocumentRoles(
+					batch, roleName
+				);
 
-			List<String> usersInRole = documentRole.getUsers();
+				List<DocumentRoleUpdate> documentRoleUpdates = VaultCollections.newList();
 
-			if (usersInRole.size() > 0) {
+				for (DocumentVersion documentVersion : batch) {
 
-				DocumentRoleUpdate documentRoleUpdate = documentRoleService.newDocumentRoleUpdate(
-					roleName, documentVersions.get(0)
-				);
+					DocumentRole documentRole = getDocumentRolesResponse.getDocumentRole(documentVersion);
 
-				documentRoleUpdate.removeUsers(usersInRole);
+					List<String> usersInRole = documentRole.getUsers();
 
-				documentRoleService.batchUpdateDocumentRoles(VaultCollections.asList(documentRoleUpdate))
-					.rollbackOnErrors()
-					.execute();
+					if (usersInRole.size() > 0) {
+						DocumentRoleUpdate documentRoleUpdate = documentRoleService.newDocumentRoleUpdate(
+							roleName, documentVersion
+						);
+						documentRoleUpdate.removeUsers(usersInRole);
+						documentRoleUpdates.add(documentRoleUpdate);
+					}
+				}
+
+				if (documentRoleUpdates.size() > 0) {
+					documentRoleService.batchUpdateDocumentRoles(documentRoleUpdates)
+						.rollbackOnErrors()
+						.execute();
+				}
 			}
 
     }
 
+	private static String getRoleName() {
+		ParameterSetSnapshot parameters = ParameterSetRegistry.find(PARAMETER_SET_NAME);
+		if (parameters == null) {
+			return DEFAULT_ROLE_NAME;
+		}
+		return parameters.getString("roleName", DEFAULT_ROLE_NAME);
+	}
+
 	public boolean isExecutable(DocumentActionContext documentActionContext) {
 	    return true;
 	}
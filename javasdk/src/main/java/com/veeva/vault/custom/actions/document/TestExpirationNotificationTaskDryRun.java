@@ -0,0 +1,37 @@
+package com.veeva.vault.custom.actions.document;
+
+import com.veeva.vault.custom.jobs.ExpirationUpcomingTasks;
+import com.veeva.vault.sdk.api.action.DocumentAction;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.action.DocumentActionInfo;
+import com.veeva.vault.sdk.api.action.Usage;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.job.JobParameters;
+import com.veeva.vault.sdk.api.job.JobService;
+
+/**
+ * Runs the Job that executes the Expiration Pending workflow in dry-run mode.  The job reports the
+ * documents, queries and REST calls a real run would need, without starting or cancelling any workflows.
+ */
+
+@DocumentActionInfo(
+  name = "vsdk_test_expiration_notification_dry_run__c",
+  label = "Test Expiration Notification Task (Dry Run)",
+  lifecycle = "job_processing__c",
+  usages = {Usage.USER_ACTION}
+)
+public class TestExpirationNotificationTaskDryRun implements DocumentAction {
+	
+    public void execute(DocumentActionContext documentActionContext) {
+
+      JobService jobService = ServiceLocator.locate(JobService.class);
+      JobParameters jobParameters = jobService.newJobParameters("expiration_pending_workflow__c");
+      jobParameters.setValue(ExpirationUpcomingTasks.DRY_RUN, true);
+
+      jobService.runJob(jobParameters);
+    }
+
+	public boolean isExecutable(DocumentActionContext documentActionContext) {
+	    return true;
+	}
+}
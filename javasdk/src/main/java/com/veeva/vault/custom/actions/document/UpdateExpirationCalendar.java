@@ -0,0 +1,42 @@
+package com.veeva.vault.custom.actions.document;
+
+import com.veeva.vault.custom.udc.ExpirationCalendar;
+import com.veeva.vault.sdk.api.action.DocumentAction;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.action.DocumentActionInfo;
+import com.veeva.vault.sdk.api.action.Usage;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.util.List;
+
+/**
+ * Brings the expiration calendar record of each contextual document up to date (see ExpirationCalendar).
+ * Configure as an entry action on the Job Processing lifecycle states, so that the calendar follows
+ * state changes; use as a user action to update the calendar right away after editing an expiration
+ * date outside of a state change, rather than waiting for Job ExpirationCalendarReconciliation.
+ */
+
+@DocumentActionInfo(
+  name = "vsdk_update_expiration_calendar__c",
+  label = "Update Expiration Calendar",
+  lifecycle = "job_processing__c",
+  usages = {Usage.LIFECYCLE_ENTRY_ACTION, Usage.USER_ACTION}
+)
+public class UpdateExpirationCalendar implements DocumentAction {
+
+    public void execute(DocumentActionContext documentActionContext) {
+
+      List<String> docIds = VaultCollections.newList();
+      for (DocumentVersion docVersion : documentActionContext.getDocumentVersions()) {
+        docIds.add(docVersion.getValue("id", ValueType.STRING));
+      }
+
+      ExpirationCalendar.refresh(docIds);
+    }
+
+	public boolean isExecutable(DocumentActionContext documentActionContext) {
+	    return true;
+	}
+}
@@ -0,0 +1,154 @@
+package com.veeva.vault.custom.actions.record.agenda;
+
+import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
+import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.AgendaRollups;
+import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.action.RecordAction;
+import com.veeva.vault.sdk.api.action.RecordActionContext;
+import com.veeva.vault.sdk.api.action.RecordActionInfo;
+import com.veeva.vault.sdk.api.action.Usage;
+import com.veeva.vault.sdk.api.core.*;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This record action implements the User Action to copy an Agenda (agenda__c) and all of its
+ * Agenda Items (agenda_item__c) to a new Agenda, e.g. to build next month's review agenda from
+ * this month's.
+ *
+ * The user input record (agenda_clone__c) supplies the new Agenda's name and meeting date, and
+ * optionally "Refresh Document Info" (refresh_document_info__c).  The items are copied with their
+ * order, duration, topic, notes and document info, and inserted in batches with the ordering step
+ * of AgendaItemTrigger suppressed; their start/end times, and the new Agenda's end time, are then
+ * calculated in one pass.  If "Refresh Document Info" is set, each item's document info is read
+ * again from its document instead of copied, except its duration, which keeps the copied schedule.
+ * Either way the document info step of AgendaItemTrigger is suppressed, so that it does not replace
+ * the copied values.
+ *
+ * Documents are not changed: their Agenda field still refers to the original Agenda.
+ */
+
+@RecordActionInfo (
+  label="Copy Agenda",
+  object="agenda__c",
+  usages={Usage.USER_ACTION},
+  user_input_object = "agenda_clone__c"
+)
+public class AgendaClone implements RecordAction {
+
+    public void execute(RecordActionContext recordActionContext) {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+
+      Record thisRecord = recordActionContext.getRecords().get(0);
+      Record inputRecord = recordActionContext.getUserInputRecord();
+
+      String agendaId = thisRecord.getValue("id", ValueType.STRING);
+      boolean refreshDocumentInfo = Boolean.TRUE.equals(
+        inputRecord.getValue("refresh_document_info__c", ValueType.BOOLEAN)
+      );
+
+      /////////////////////////////////////////////////////////////
+      // Create the new agenda ...
+      /////////////////////////////////////////////////////////////
+      QueryExecutionResult agenda = QueryUtil.queryOne(
+        "select meeting_time__c, defer_recalculation__c from agenda__c where id = '"+agendaId+"'"
+      );
+      String agendaMeetingTime = agenda.getValue("meeting_time__c", ValueType.STRING);
+
+      Record newAgenda = recordService.newRecord("agenda__c");
+      newAgenda.setValue("name__v", inputRecord.getValue("name__v", ValueType.STRING));
+      newAgenda.setValue("meeting_date__c", inputRecord.getValue("meeting_date__c", ValueType.DATE));
+      newAgenda.setValue("meeting_time__c", agendaMeetingTime);
+      newAgenda.setValue("defer_recalculation__c", agenda.getValue("defer_recalculation__c", ValueType.BOOLEAN));
+      String newAgendaId = Util.createRecord(newAgenda);
+
+      // This suppresses the ordering step of the Agenda Item trigger for the new agenda, so
+      // that the start/end times are calculated once, below.
+      // See 'triggers/agenda/AgendaItemTrigger.java'.
+      AgendaItemContext context = AgendaItemContext.get();
+      context.guard(newAgendaId);
+
+      try {
+        /////////////////////////////////////////////////////////////
+        // Copy the items to the new agenda ...
+        /////////////////////////////////////////////////////////////
+        List<String> fieldNames = AgendaApp.getAgendaItemCopyFields();
+        fieldNames.add("order__c");
+
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select " + Util.stringifyList(fieldNames, ", ") + " from agenda_item__c" +
+            " where agenda__c = '"+agendaId+"'" +
+            " order by order__c asc"
+        ).streamResults().iterator();
+
+        List<Record> recordsToSave = VaultCollections.newList();
+        List<BigDecimal> durations = VaultCollections.newList();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          Record recordToSave = recordService.newRecord("agenda_item__c");
+          recordToSave.setValue("agenda__c", newAgendaId);
+          recordToSave.setValue("order__c", result.getValue("order__c", ValueType.NUMBER));
+          AgendaApp.copyAgendaItemFields(result, recordToSave);
+          recordsToSave.add(recordToSave);
+          durations.add(result.getValue("duration__c", ValueType.NUMBER));
+        }
+
+        if (refreshDocumentInfo) {
+          AgendaApp.setAgendaItemsDocumentInfo(recordsToSave);
+          // keep the copied durations, so that the schedule is the same as the original agenda's
+          for (int i = 0; i < recordsToSave.size(); i++) {
+            recordsToSave.get(i).setValue("duration__c", durations.get(i));
+          }
+        }
+
+        // the document info is copied or set above, so the Agenda Item trigger does not read it again
+        context.setDocumentInfoSet(true);
+        try {
+          for (List<Record> batch : Util.partition(recordsToSave, Util.RECORD_BATCH_SIZE)) {
+            Util.batchSaveRecords(batch);
+          }
+        } finally {
+          context.setDocumentInfoSet(false);
+        }
+
+        /////////////////////////////////////////////////////////////
+        // Calculate start/end times for the new items ...
+        /////////////////////////////////////////////////////////////
+        if (agendaMeetingTime != null && !recordsToSave.isEmpty()) {
+          AgendaItemsList agendaItems = new AgendaItemsList(newAgendaId);
+          agendaItems.updateStartEndTimes(agendaMeetingTime);
+          for (List<Record> batch : Util.partition(agendaItems.getChangedRecords(), Util.RECORD_BATCH_SIZE)) {
+            Util.batchSaveRecords(batch);
+          }
+
+          Map<String, String> endTimes = VaultCollections.newMap();
+          endTimes.put(newAgendaId, agendaItems.getEndTime());
+          AgendaRollups.saveEndTimes(endTimes);
+        }
+      } finally {
+        context.release(newAgendaId);
+      }
+
+      /////////////////////////////////////////////////////////////
+      // And delete the input record -- it's no longer needed ...
+      /////////////////////////////////////////////////////////////
+      String recordId = inputRecord.getValue("id", ValueType.STRING);
+      Util.deleteRecord(recordService.newRecordWithId("agenda_clone__c", recordId));
+
+    }
+
+    public boolean isExecutable(RecordActionContext recordActionContext) {
+        return true;
+    }
+}
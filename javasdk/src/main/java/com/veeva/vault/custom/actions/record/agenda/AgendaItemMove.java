@@ -1,6 +1,10 @@
 package com.veeva.vault.custom.actions.record.agenda;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
+import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.AgendaRecalcQueue;
+import com.veeva.vault.custom.udc.AgendaRollups;
 import com.veeva.vault.custom.udc.ErrorType;
 import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.custom.udc.Util;
@@ -13,23 +17,31 @@ import com.veeva.vault.sdk.api.data.Record;
 import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.job.JobParameters;
-import com.veeva.vault.sdk.api.job.JobService;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
- * This record action implements the User Action to move an Agenda Item to a different
- * Agenda.
+ * This record action implements the User Action to move one or more Agenda Items to a
+ * different Agenda.
+ *
+ * All selected Agenda Items are handled together: their documents are read with one query per
+ * chunk and saved in batches, the new Agenda Items are inserted in batches, and the old Agenda
+ * Items and the input record are deleted in batches.  Each new Agenda Item is a copy of the old one,
+ * including its document info (see AgendaApp.copyAgendaItemFields), which is not read again from
+ * the document.  The source Agendas and the target Agenda
+ * are then recalculated once each: small Agendas in this request, so that the user sees the new
+ * times immediately, and large ones by one run of Job AgendaItemRecalc.
  */
 
 @RecordActionInfo (
   label="Move to Another Agenda",
   object="agenda_item__c",
-  usages={Usage.USER_ACTION},
+  usages={Usage.USER_ACTION, Usage.USER_BULK_ACTION},
   user_input_object = "agenda_item_move__c"
 )
 public class AgendaItemMove implements RecordAction {
@@ -38,91 +50,98 @@ public class AgendaItemMove implements RecordAction {
 
       RecordService recordService = ServiceLocator.locate(RecordService.class);
 
-      Record thisRecord = recordActionContext.getRecords().get(0);
       Record inputRecord = recordActionContext.getUserInputRecord();
-
-      String oldAgendaId = thisRecord.getValue("agenda__c", ValueType.STRING);
       String newAgendaId = inputRecord.getValue("agenda__c", ValueType.STRING);
 
-      if (newAgendaId.equals(oldAgendaId)) {
-        throw new RollbackException(ErrorType.OPERATION_DENIED, "Select a different Agenda");
+      // the items to move, skipping any that are already on the target agenda
+      List<Record> items = VaultCollections.newList();
+      for (Record record : recordActionContext.getRecords()) {
+        if (!newAgendaId.equals(record.getValue("agenda__c", ValueType.STRING))) {
+          items.add(record);
+        }
       }
 
-      BigDecimal docId = thisRecord.getValue("document_unbound__c", ValueType.NUMBER);
+      if (items.isEmpty()) {
+        throw new RollbackException(ErrorType.OPERATION_DENIED, "Select a different Agenda");
+      }
 
       /////////////////////////////////////////////////////////////
-      // Update the Document's agenda__c field ...
+      // Update the Documents' agenda__c field ...
       /////////////////////////////////////////////////////////////
-      if (docId != null) {
-        QueryExecutionResult qeResult = QueryUtil.queryOne(
-          "select agenda__c, version_id from documents where id = " + docId
-        );
-        List<String> agendaIds = qeResult.getValue("agenda__c", ValueType.REFERENCES);
-        String docVersionId = qeResult.getValue("version_id", ValueType.STRING);
-
-        if (agendaIds.size() > 1) {
-          // field document.agenda__c might be multi-pick...
-          if (!agendaIds.contains(oldAgendaId)) {
-            throw new RollbackException(
-              ErrorType.OPERATION_DENIED,
-              "The Agenda field on this document does not contain this agenda.");
-          }
-          agendaIds.set(agendaIds.indexOf(oldAgendaId), newAgendaId);
-        } else {
-          agendaIds.set(0, newAgendaId);
+      updateDocuments(items, newAgendaId);
+
+      // This suppresses the ordering step of the Agenda Item trigger for the source and target
+      // agendas, so that we can control calculation of the agenda item start/end times.
+      // See 'triggers/agenda/AgendaItemTrigger.java'.
+      List<String> agendaIds = VaultCollections.newList();
+      for (Record item : items) {
+        String oldAgendaId = item.getValue("agenda__c", ValueType.STRING);
+        if (!agendaIds.contains(oldAgendaId)) {
+          agendaIds.add(oldAgendaId);
         }
+      }
+      agendaIds.add(newAgendaId);
+      AgendaItemContext context = AgendaItemContext.get();
+      List<String> guardedIds = context.guard(agendaIds);
 
-        LocalDate newMeetingDate = QueryUtil.queryOne(
-          "select meeting_date__c from agenda__c where id = '"+newAgendaId+"'"
-        ).getValue("meeting_date__c", ValueType.DATE);
+      try {
+        /////////////////////////////////////////////////////////////
+        // Add the items to the other agenda ...
+        /////////////////////////////////////////////////////////////
+        List<String> itemIds = VaultCollections.newList();
+        for (Record item : items) {
+          itemIds.add(item.getValue("id", ValueType.STRING));
+        }
 
-        DocumentService documentService = ServiceLocator.locate(DocumentService.class);
-        DocumentVersion documentVersion = documentService.newVersionWithId(docVersionId);
-        documentVersion.setValue("agenda__c", agendaIds);
-        documentVersion.setValue("meeting_review_date__c", newMeetingDate);
-        documentService.saveDocumentVersions(VaultCollections.asList(documentVersion));
-      }
+        // the action's records may not carry every field, so the items are read again
+        List<Record> recordsToSave = VaultCollections.newList();
+        for (List<String> chunk : Util.partition(itemIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+          Iterator<QueryExecutionResult> iter = QueryUtil.query(
+            "select " + Util.stringifyList(AgendaApp.getAgendaItemCopyFields(), ", ") + " from agenda_item__c" +
+              " where id contains " + Util.vqlContains(chunk)
+          ).streamResults().iterator();
 
-      // This suppresses AFTER trigger processing for the Agenda Item object, so that we
-      // can control calculation of the agenda item start/end times.
-      // See 'triggers/AgendaItemAfter.java'.
-      RequestContext.get().setValue(AgendaApp.AGENDA_ITEM_SEMAPHORE, true);
+          while (iter.hasNext()) {
+            Record recordToSave = recordService.newRecord("agenda_item__c");
+            recordToSave.setValue("agenda__c", newAgendaId);
+            AgendaApp.copyAgendaItemFields(iter.next(), recordToSave);
+            recordsToSave.add(recordToSave);
+          }
+        }
 
-      /////////////////////////////////////////////////////////////
-      // Add the item to the other agenda ...
-      /////////////////////////////////////////////////////////////
-      Record recordToSave = recordService.newRecord("agenda_item__c");
-      recordToSave.setValue("agenda__c", newAgendaId);
-      recordToSave.setValue("document_unbound__c", docId);
-      recordToSave.setValue("topic__c", thisRecord.getValue("topic__c", ValueType.STRING));
-      recordToSave.setValue("duration__c", thisRecord.getValue("duration__c", ValueType.NUMBER));
-      recordToSave.setValue("notes__c", thisRecord.getValue("notes__c", ValueType.STRING));
-      Util.saveRecord(recordToSave); // note: document info is captured by the BEFORE trigger
+        // the document info is copied, so the Agenda Item trigger does not read it again
+        context.setDocumentInfoSet(true);
+        try {
+          for (List<Record> batch : Util.partition(recordsToSave, Util.RECORD_BATCH_SIZE)) {
+            Util.batchSaveRecords(batch);
+          }
+        } finally {
+          context.setDocumentInfoSet(false);
+        }
 
-      String recordId;
+        /////////////////////////////////////////////////////////////
+        // Remove the items from their current agendas ...
+        /////////////////////////////////////////////////////////////
+        List<Record> recordsToDelete = VaultCollections.newList();
+        for (String itemId : itemIds) {
+          recordsToDelete.add(recordService.newRecordWithId("agenda_item__c", itemId));
+        }
+        for (List<Record> batch : Util.partition(recordsToDelete, Util.RECORD_BATCH_SIZE)) {
+          Util.batchDeleteRecords(batch);
+        }
 
-      /////////////////////////////////////////////////////////////
-      // Remove the item from its current agenda ...
-      /////////////////////////////////////////////////////////////
-      recordId = thisRecord.getValue("id", ValueType.STRING);
-      Util.deleteRecord(recordService.newRecordWithId("agenda_item__c", recordId));
+        /////////////////////////////////////////////////////////////
+        // And delete the input record -- it's no longer needed ...
+        /////////////////////////////////////////////////////////////
+        String recordId = inputRecord.getValue("id", ValueType.STRING);
+        Util.deleteRecord(recordService.newRecordWithId("agenda_item_move__c", recordId));
 
-      /////////////////////////////////////////////////////////////
-      // And delete the input record -- it's no longer needed ...
-      /////////////////////////////////////////////////////////////
-      recordId = inputRecord.getValue("id", ValueType.STRING);
-      Util.deleteRecord(recordService.newRecordWithId("agenda_item_move__c", recordId));
-
-      ////////////////////////////////////////////////////////////////////////////
-      // recalculate start/end times for the Agenda Items in the old Agenda ...
-      ////////////////////////////////////////////////////////////////////////////
-      String agendaMeetingTime = AgendaApp.getAgendaMeetingTime(oldAgendaId);
-      if (agendaMeetingTime != null) {
-        JobService jobService = ServiceLocator.locate(JobService.class);
-        JobParameters jobParameters = jobService.newJobParameters("agenda_item_recalc__c");
-        jobParameters.setValue(AgendaApp.AGENDA_ID, oldAgendaId);
-        jobParameters.setValue(AgendaApp.AGENDA_MEETNG_TIME, agendaMeetingTime);
-        jobService.runJob(jobParameters);
+        ////////////////////////////////////////////////////////////////////////////
+        // recalculate start/end times for the Agenda Items in the old and new Agendas ...
+        ////////////////////////////////////////////////////////////////////////////
+        recalculate(agendaIds);
+      } finally {
+        context.release(guardedIds);
       }
 
     }
@@ -130,4 +149,118 @@ public class AgendaItemMove implements RecordAction {
     public boolean isExecutable(RecordActionContext recordActionContext) {
         return true;
     }
-}
\ No newline at end of file
+
+    // Recalculate the start/end times of the Agendas' items.  Agendas for which recalculation is
+    // deferred (see AgendaApp.isRecalcDeferred) are queued together for one run of Job AgendaItemRecalc
+    // (see AgendaRecalcQueue); the others are recalculated now, and saved together.  Agendas without
+    // a meeting time are skipped.  The end times of the recalculated Agendas are saved with their items
+    // (see AgendaRollups).
+    private static void recalculate(List<String> agendaIds) {
+
+      Map<String, AgendaItemsList> agendaItemsLists = AgendaItemsList.forAgendas(agendaIds);
+
+      List<String> deferredAgendaIds = VaultCollections.newList();
+      List<Record> changedRecords = VaultCollections.newList();
+      Map<String, String> endTimes = VaultCollections.newMap();
+
+      for (List<String> chunk : Util.partition(agendaIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, meeting_time__c, defer_recalculation__c from agenda__c where id contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          String agendaId = result.getValue("id", ValueType.STRING);
+          String agendaMeetingTime = result.getValue("meeting_time__c", ValueType.STRING);
+          AgendaItemsList agendaItems = agendaItemsLists.get(agendaId);
+
+          if (agendaMeetingTime == null) {
+            continue;
+          }
+
+          if (AgendaApp.isRecalcDeferred(agendaItems.size(), result.getValue("defer_recalculation__c", ValueType.BOOLEAN))) {
+            deferredAgendaIds.add(agendaId);
+            continue;
+          }
+
+          agendaItems.compressAgendaItemOrdering();
+          agendaItems.updateStartEndTimes(agendaMeetingTime);
+          changedRecords.addAll(agendaItems.getChangedRecords());
+          endTimes.put(agendaId, agendaItems.getEndTime());
+        }
+      }
+
+      for (List<Record> batch : Util.partition(changedRecords, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(batch);
+      }
+      AgendaRollups.saveEndTimes(endTimes);
+
+      AgendaRecalcQueue.request(deferredAgendaIds);
+    }
+
+    // Replace each item's old agenda with the new agenda in its document's agenda__c field, and
+    // set the document's meeting date to the new agenda's.
+    private static void updateDocuments(List<Record> items, String newAgendaId) {
+
+      // old agenda ids of the items, grouped by document id
+      Map<String, List<String>> oldAgendaIds = VaultCollections.newMap();
+      for (Record item : items) {
+        BigDecimal docId = item.getValue("document_unbound__c", ValueType.NUMBER);
+        if (docId == null) {
+          continue;
+        }
+        String key = docId.toBigInteger().toString();
+        if (!oldAgendaIds.containsKey(key)) {
+          oldAgendaIds.put(key, VaultCollections.newList());
+        }
+        oldAgendaIds.get(key).add(item.getValue("agenda__c", ValueType.STRING));
+      }
+
+      if (oldAgendaIds.isEmpty()) {
+        return;
+      }
+
+      LocalDate newMeetingDate = QueryUtil.queryOne(
+        "select meeting_date__c from agenda__c where id = '"+newAgendaId+"'"
+      ).getValue("meeting_date__c", ValueType.DATE);
+
+      DocumentService documentService = ServiceLocator.locate(DocumentService.class);
+      List<DocumentVersion> documentVersions = VaultCollections.newList();
+
+      for (List<String> chunk : Util.partition(Util.toList(oldAgendaIds.keySet()), AgendaApp.QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, agenda__c, version_id from documents where id contains " + Util.vqlContainsNumbers(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult qeResult = iter.next();
+          List<String> agendaIds = qeResult.getValue("agenda__c", ValueType.REFERENCES);
+          String docVersionId = qeResult.getValue("version_id", ValueType.STRING);
+
+          for (String oldAgendaId : oldAgendaIds.get(qeResult.getValue("id", ValueType.STRING))) {
+            if (agendaIds.size() > 1) {
+              // field document.agenda__c might be multi-pick...
+              if (!agendaIds.contains(oldAgendaId)) {
+                throw new RollbackException(
+                  ErrorType.OPERATION_DENIED,
+                  "The Agenda field on document " + qeResult.getValue("id", ValueType.STRING) +
+                    " does not contain the Agenda of its Agenda Item.");
+              }
+              agendaIds.set(agendaIds.indexOf(oldAgendaId), newAgendaId);
+            } else {
+              agendaIds.set(0, newAgendaId);
+            }
+          }
+
+          DocumentVersion documentVersion = documentService.newVersionWithId(docVersionId);
+          documentVersion.setValue("agenda__c", agendaIds);
+          documentVersion.setValue("meeting_review_date__c", newMeetingDate);
+          documentVersions.add(documentVersion);
+        }
+      }
+
+      for (List<DocumentVersion> batch : Util.partition(documentVersions, AgendaApp.DOCUMENT_SAVE_BATCH_SIZE)) {
+        documentService.saveDocumentVersions(batch);
+      }
+    }
+}
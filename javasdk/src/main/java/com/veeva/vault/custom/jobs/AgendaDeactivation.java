@@ -1,7 +1,10 @@
 package com.veeva.vault.custom.jobs;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaAppParameters;
 import com.veeva.vault.custom.udc.Logger;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.StringUtils;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
 
@@ -10,17 +13,38 @@ import java.util.List;
 /**
  *  Deactivate Agenda (agenda__c) records whose Meeting Date field (meeting_date__c)
  *  is set to a date before the current date.
+ *
+ *  The past Agendas are found in init(), and split into job items of up to AGENDAS_PER_TASK
+ *  Agendas, each processed in its own task so that tasks run concurrently.  If parameter
+ *  "deactivationActionName" is set in the "AgendaApp" parameter set (see AgendaAppParameters),
+ *  each task deactivates its Agendas in bulk through the Vault API; otherwise it saves the
+ *  status of each Agenda separately.  Each task logs one summary line.
  */
 
-@JobInfo(adminConfigurable = true)
+@JobInfo(adminConfigurable = true, chunkSize = 1)
 public class AgendaDeactivation implements Job {
 
     private static final String TASK_ERROR_MSG = "taskErrorMsg";
 
+    // maximum number of Agendas deactivated by each task
+    private static final int AGENDAS_PER_TASK = 200;
+
     // Initialize custom job and set job input values
     public JobInputSupplier init(JobInitContext jobInitContext) {
+
+      Logger logger = new Logger(jobInitContext.getJobLogger());
+
+      List<String> agendaIds = AgendaApp.findPastAgendaIds();
+
       List<JobItem> jobItems = VaultCollections.newList();
-      jobItems.add(jobInitContext.newJobItem());
+      for (List<String> chunk : Util.partition(agendaIds, AGENDAS_PER_TASK)) {
+        JobItem jobItem = jobInitContext.newJobItem();
+        jobItem.setValue(AgendaApp.AGENDA_IDS, Util.stringifyList(chunk, ","));
+        jobItems.add(jobItem);
+      }
+
+      logger.info("Found " + agendaIds.size() + " past Agendas; " + jobItems.size() + " task(s).");
+
       return jobInitContext.newJobInput(jobItems);
     }
 
@@ -29,13 +53,36 @@ public class AgendaDeactivation implements Job {
 
       Logger logger = new Logger(jobProcessContext.getJobLogger());
 
-      logger.info("Starting deactivation...");
-      AgendaApp.deactivatePastAgendas(logger);
-      logger.info("...deactivation complete");
+      String actionName = new AgendaAppParameters().deactivationActionName();
+
+      int count = 0;
+      List<String> failedIds = VaultCollections.newList();
+
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+        List<String> agendaIds = VaultCollections.newList();
+        for (String agendaId : StringUtils.split(jobItem.getValue(AgendaApp.AGENDA_IDS, JobValueType.STRING), ",")) {
+          agendaIds.add(agendaId);
+        }
+        count += agendaIds.size();
+        failedIds.addAll(AgendaApp.deactivateAgendas(agendaIds, actionName, logger));
+      }
+
+      logger.info(
+        "Deactivated " + (count - failedIds.size()) + " of " + count + " Agendas" +
+          (actionName == null ? "." : " using action " + actionName + ".")
+      );
 
       JobTask task = jobProcessContext.getCurrentTask();
       TaskOutput taskOutput = task.getTaskOutput();
-      taskOutput.setState(TaskState.SUCCESS);
+
+      if (failedIds.isEmpty()) {
+        taskOutput.setState(TaskState.SUCCESS);
+      } else {
+        taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
+        taskOutput.setValue(TASK_ERROR_MSG, Logger.truncate(
+          "Unable to deactivate " + failedIds.size() + " Agendas: " + Util.stringifyList(failedIds), Logger.DEFAULT_MAX_LENGTH
+        ));
+      }
 
     }
 
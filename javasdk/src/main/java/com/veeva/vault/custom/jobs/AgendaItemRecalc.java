@@ -1,43 +1,95 @@
 package com.veeva.vault.custom.jobs;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
 import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.AgendaRecalcQueue;
+import com.veeva.vault.custom.udc.AgendaRollups;
 import com.veeva.vault.custom.udc.QueryUtil;
-import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.StringUtils;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /*
   This job recalculates the Start/End Times for all Agenda Items (agenda_item__c)
-  belonging to a specific Agenda (agenda__c).
+  belonging to one or more Agendas (agenda__c).
+
+  The Agendas are taken from:
+    - job parameter "AgendaIds": a comma-separated list of Agenda ids
+    - job parameter "AgendaId": a single Agenda id
+    - the queue of recalculation requests (see AgendaRecalcQueue), which is claimed by init()
+
+  Before it exits, the job starts another run if requests queued after its claim are left without one.
+
+  Each Agenda is a separate job item, processed in its own task, so that Agendas are
+  recalculated concurrently, and its rollup end time is saved with its items (see AgendaRollups).
+  Agendas without a meeting time are skipped.
  */
-  
-  @JobInfo(adminConfigurable = true)
+
+  @JobInfo(adminConfigurable = true, chunkSize = 1)
   public class AgendaItemRecalc implements Job {
 
     public JobInputSupplier init(JobInitContext jobInitContext) {
 
       JobLogger logger = jobInitContext.getJobLogger();
 
-      String agendaId = jobInitContext.getJobParameter(AgendaApp.AGENDA_ID, JobParamValueType.STRING);
-      String agendaMeetingTime = jobInitContext.getJobParameter(AgendaApp.AGENDA_MEETNG_TIME, JobParamValueType.STRING);
+      List<String> agendaIds = VaultCollections.newList();
+
+      String agendaIdsParam = jobInitContext.getJobParameter(AgendaApp.AGENDA_IDS, JobParamValueType.STRING);
+      if (agendaIdsParam != null && !agendaIdsParam.isEmpty()) {
+        for (String agendaId : StringUtils.split(agendaIdsParam, ",")) {
+          addAgendaId(agendaIds, agendaId.trim());
+        }
+      }
 
-      String agendaName = QueryUtil.queryOne(
-        "select name__v from agenda__c where id = '"+agendaId+"'"
-      ).getValue("name__v", ValueType.STRING);
+      String agendaIdParam = jobInitContext.getJobParameter(AgendaApp.AGENDA_ID, JobParamValueType.STRING);
+      addAgendaId(agendaIds, agendaIdParam);
 
-      logger.log("Processing agenda: \"" + agendaName + "\" ("+agendaId+")");
+      List<String> queuedAgendaIds = AgendaRecalcQueue.claim();
+      logger.log("Claimed " + queuedAgendaIds.size() + " queued recalculation request(s).");
+      for (String agendaId : queuedAgendaIds) {
+        addAgendaId(agendaIds, agendaId);
+      }
 
       List<JobItem> jobItems = VaultCollections.newList();
 
-      JobItem jobItem = jobInitContext.newJobItem();
-      jobItem.setValue(AgendaApp.AGENDA_ID, agendaId);
-      jobItem.setValue(AgendaApp.AGENDA_MEETNG_TIME, agendaMeetingTime);
-      jobItem.setValue(AgendaApp.AGENDA_NAME, agendaName);
-      jobItems.add(jobItem);
+      if (agendaIds.isEmpty()) {
+        logger.log("No agendas to process.");
+        return jobInitContext.newJobInput(jobItems);
+      }
+
+      for (List<String> chunk : Util.partition(agendaIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, name__v, meeting_time__c from agenda__c where id contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          String agendaId = result.getValue("id", ValueType.STRING);
+          String agendaName = result.getValue("name__v", ValueType.STRING);
+          String agendaMeetingTime = result.getValue("meeting_time__c", ValueType.STRING);
+
+          if (agendaMeetingTime == null) {
+            logger.log("Skipping agenda with no meeting time: \"" + agendaName + "\" ("+agendaId+")");
+            continue;
+          }
+
+          logger.log("Processing agenda: \"" + agendaName + "\" ("+agendaId+")");
+
+          JobItem jobItem = jobInitContext.newJobItem();
+          jobItem.setValue(AgendaApp.AGENDA_ID, agendaId);
+          jobItem.setValue(AgendaApp.AGENDA_MEETNG_TIME, agendaMeetingTime);
+          jobItem.setValue(AgendaApp.AGENDA_NAME, agendaName);
+          jobItems.add(jobItem);
+        }
+      }
 
       return jobInitContext.newJobInput(jobItems);
     }
@@ -46,26 +98,35 @@ import java.util.List;
 
       JobLogger logger = jobProcessContext.getJobLogger();
 
-      // This Job is not expected to support multiple items...
-      JobItem jobItem = jobProcessContext.getCurrentTask().getItems().get(0);
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+
+        String agendaId = jobItem.getValue(AgendaApp.AGENDA_ID, JobValueType.STRING);
+        String agendaMeetingTime = jobItem.getValue(AgendaApp.AGENDA_MEETNG_TIME, JobValueType.STRING);
+        String agendaName = jobItem.getValue(AgendaApp.AGENDA_NAME, JobValueType.STRING);
 
-      String agendaId = jobItem.getValue(AgendaApp.AGENDA_ID, JobValueType.STRING);
-      String agendaMeetingTime = jobItem.getValue(AgendaApp.AGENDA_MEETNG_TIME, JobValueType.STRING);
-      String agendaName = jobItem.getValue(AgendaApp.AGENDA_NAME, JobValueType.STRING);
+        // This suppresses the ordering step of the Agenda Item trigger for this agenda, so that
+        // we can control calculation of the agenda item start/end times.
+        // See 'triggers/agenda/AgendaItemTrigger.java'.
+        AgendaItemContext context = AgendaItemContext.get();
+        context.guard(agendaId);
 
-      logger.log("Updating start/end times for agenda: \"" + agendaName + "\" ("+agendaId+")");
+        logger.log("Updating start/end times for agenda: \"" + agendaName + "\" ("+agendaId+")");
 
-      // This suppresses AFTER trigger processing for the Agenda Item object, so that we
-      // can control calculation of the agenda item start/end times.
-      // See 'triggers/AgendaItemAfter.java'.
-      RequestContext.get().setValue(AgendaApp.AGENDA_ITEM_SEMAPHORE, true);
+        try {
+          AgendaItemsList agendaItemsList = new AgendaItemsList(agendaId);
+          agendaItemsList.compressAgendaItemOrdering();
+          agendaItemsList.updateStartEndTimes(agendaMeetingTime);
+          agendaItemsList.saveChangedRecords();
 
-      AgendaItemsList agendaItemsList = new AgendaItemsList(agendaId);
-      agendaItemsList.compressAgendaItemOrdering();
-      agendaItemsList.updateStartEndTimes(agendaMeetingTime);
-      agendaItemsList.saveChangedRecords();
+          Map<String, String> endTimes = VaultCollections.newMap();
+          endTimes.put(agendaId, agendaItemsList.getEndTime());
+          AgendaRollups.saveEndTimes(endTimes);
+        } finally {
+          context.release(agendaId);
+        }
 
-      logger.log("Completed start/end times update for agenda: \"" + agendaName + "\" ("+agendaId+")");
+        logger.log("Completed start/end times update for agenda: \"" + agendaName + "\" ("+agendaId+")");
+      }
 
       JobTask task = jobProcessContext.getCurrentTask();
       TaskOutput taskOutput = task.getTaskOutput();
@@ -75,6 +136,10 @@ import java.util.List;
     public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
        JobLogger logger = jobCompletionContext.getJobLogger();
        logger.log("All tasks completed successfully");
+
+       if (AgendaRecalcQueue.restartIfPending()) {
+         logger.log("Started another run for the requests queued since this run's claim.");
+       }
     }
 
     public void completeWithError(JobCompletionContext jobCompletionContext) {
@@ -90,5 +155,15 @@ import java.util.List;
               logger.log(task.getTaskId() + " failed with error message " + taskOutput.getValue("firstError", JobValueType.STRING));
            }
        }
+
+       if (AgendaRecalcQueue.restartIfPending()) {
+         logger.log("Started another run for the requests queued since this run's claim.");
+       }
+    }
+
+    private static void addAgendaId(List<String> agendaIds, String agendaId) {
+      if (agendaId != null && !agendaId.isEmpty() && !agendaIds.contains(agendaId)) {
+        agendaIds.add(agendaId);
+      }
     }
-  }
\ No newline at end of file
+  }
@@ -0,0 +1,110 @@
+package com.veeva.vault.custom.jobs;
+
+import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.StringUtils;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.job.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/*
+  This job copies the meeting date of one or more Agendas (agenda__c) to the Meeting Date field
+  (meeting_review_date__c) of their documents.  It is started by AgendaApp.updateDocumentMeetingDates
+  when there are too many documents to update while the user waits.
+
+  Job parameters:
+    - "AgendaIds": a comma-separated list of Agenda ids
+
+  The job is given Agendas rather than a date and documents, so that it writes the current data:
+  init() reads the documents of each Agenda, and process() reads the Agenda's meeting date just
+  before writing it.  A job started for an earlier change of the date therefore cannot overwrite a
+  later one.
+
+  The documents of each Agenda are split into job items of up to AgendaApp.DOCUMENT_SAVE_BATCH_SIZE
+  documents.  Documents that already hold the meeting date are not written.
+ */
+
+  @JobInfo(adminConfigurable = true, chunkSize = 1)
+  public class AgendaMeetingDateSync implements Job {
+
+    public JobInputSupplier init(JobInitContext jobInitContext) {
+
+      JobLogger logger = jobInitContext.getJobLogger();
+
+      String agendaIdsParam = jobInitContext.getJobParameter(AgendaApp.AGENDA_IDS, JobParamValueType.STRING);
+
+      List<String> agendaIds = VaultCollections.newList();
+      if (agendaIdsParam != null && !agendaIdsParam.isEmpty()) {
+        for (String agendaId : StringUtils.split(agendaIdsParam, ",")) {
+          agendaIds.add(agendaId.trim());
+        }
+      }
+
+      Map<String, List<String>> agendaDocIds = AgendaApp.findAgendaDocIds(agendaIds);
+
+      List<JobItem> jobItems = VaultCollections.newList();
+
+      for (String agendaId : agendaDocIds.keySet()) {
+        List<String> docIds = agendaDocIds.get(agendaId);
+        logger.log("Setting the meeting date of Agenda " + agendaId + " on " + docIds.size() + " document(s).");
+        for (List<String> chunk : Util.partition(docIds, AgendaApp.DOCUMENT_SAVE_BATCH_SIZE)) {
+          JobItem jobItem = jobInitContext.newJobItem();
+          jobItem.setValue(AgendaApp.AGENDA_ID, agendaId);
+          jobItem.setValue(AgendaApp.DOC_IDS, Util.stringifyList(chunk, ","));
+          jobItems.add(jobItem);
+        }
+      }
+
+      return jobInitContext.newJobInput(jobItems);
+    }
+
+    public void process(JobProcessContext jobProcessContext) {
+
+      JobLogger logger = jobProcessContext.getJobLogger();
+
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+
+        String agendaId = jobItem.getValue(AgendaApp.AGENDA_ID, JobValueType.STRING);
+        String docIds = jobItem.getValue(AgendaApp.DOC_IDS, JobValueType.STRING);
+
+        List<String> docIdList = VaultCollections.newList();
+        for (String docId : StringUtils.split(docIds, ",")) {
+          docIdList.add(docId);
+        }
+
+        // the current meeting date (null if the Agenda has none)
+        LocalDate meetingDate = AgendaApp.getAgendaMeetingDates(VaultCollections.asList(agendaId)).get(agendaId);
+
+        int written = AgendaApp.updateDocumentMeetingDateNow(meetingDate, docIdList);
+
+        logger.log("Updated " + written + " of " + docIdList.size() + " document(s) of Agenda " + agendaId + ".");
+      }
+
+      JobTask task = jobProcessContext.getCurrentTask();
+      TaskOutput taskOutput = task.getTaskOutput();
+      taskOutput.setState(TaskState.SUCCESS);
+    }
+
+    public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("All tasks completed successfully");
+    }
+
+    public void completeWithError(JobCompletionContext jobCompletionContext) {
+       JobResult result = jobCompletionContext.getJobResult();
+
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
+
+       List<JobTask> tasks = jobCompletionContext.getTasks();
+       for (JobTask task : tasks) {
+           TaskOutput taskOutput = task.getTaskOutput();
+           if (TaskState.ERRORS_ENCOUNTERED.equals(taskOutput.getState())) {
+              logger.log(task.getTaskId() + " failed with error message " + taskOutput.getValue("firstError", JobValueType.STRING));
+           }
+       }
+    }
+  }
@@ -0,0 +1,133 @@
+package com.veeva.vault.custom.jobs;
+
+import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
+import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.Logger;
+import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.job.*;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+  This job makes the Order (order__c) numbers of the Agenda Items (agenda_item__c) of every
+  active Agenda (agenda__c) contiguous, as action CompressItemOrdering does for one Agenda.
+  It is intended to run on a schedule.
+
+  init() finds the Agendas whose ordering has gaps or duplicates with a single query of the
+  agenda__c and order__c fields of all ordered items, sorted by Agenda and Order, so that no
+  Agenda Item data is loaded for Agendas that are already contiguous.  (VQL has no grouped
+  aggregates.)  Each such Agenda is a separate job item, processed in its own task, so that
+  Agendas are compacted concurrently.
+ */
+
+  @JobInfo(adminConfigurable = true, chunkSize = 1)
+  public class AgendaOrderingCompaction implements Job {
+
+    public JobInputSupplier init(JobInitContext jobInitContext) {
+
+      Logger logger = new Logger(jobInitContext.getJobLogger());
+
+      List<JobItem> jobItems = VaultCollections.newList();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select agenda__c, order__c from agenda_item__c" +
+          " where order__c != null" +
+          "   and agenda__cr.status__v = 'active__v'" +
+          " order by agenda__c asc, order__c asc"
+      ).streamResults().iterator();
+
+      String agendaId = null;
+      int expectedOrder = 0;
+      boolean compact = false;
+      int agendaCount = 0;
+
+      while (iter.hasNext()) {
+        QueryExecutionResult result = iter.next();
+        String itemAgendaId = result.getValue("agenda__c", ValueType.STRING);
+        BigDecimal order = result.getValue("order__c", ValueType.NUMBER);
+
+        if (!itemAgendaId.equals(agendaId)) {
+          if (compact) {
+            jobItems.add(newJobItem(jobInitContext, agendaId));
+          }
+          agendaId = itemAgendaId;
+          expectedOrder = 1;
+          compact = false;
+          agendaCount++;
+        }
+
+        if (order.intValue() != expectedOrder) {
+          compact = true;
+        }
+        expectedOrder++;
+      }
+      if (compact) {
+        jobItems.add(newJobItem(jobInitContext, agendaId));
+      }
+
+      logger.info("Found " + jobItems.size() + " of " + agendaCount + " active Agendas with gaps or duplicates in their ordering.");
+
+      return jobInitContext.newJobInput(jobItems);
+    }
+
+    public void process(JobProcessContext jobProcessContext) {
+
+      Logger logger = new Logger(jobProcessContext.getJobLogger());
+
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+
+        String agendaId = jobItem.getValue(AgendaApp.AGENDA_ID, JobValueType.STRING);
+
+        // This suppresses the ordering step of the Agenda Item trigger for this agenda: compaction
+        // does not change the sequence of the items, so their start/end times are unchanged.
+        // See 'triggers/agenda/AgendaItemTrigger.java'.
+        AgendaItemContext context = AgendaItemContext.get();
+        context.guard(agendaId);
+
+        AgendaItemsList agendaItems = new AgendaItemsList(agendaId);
+        List<Record> records;
+        try {
+          agendaItems.compressAgendaItemOrdering();
+
+          records = agendaItems.getChangedRecords();
+          for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+            Util.batchSaveRecords(batch);
+          }
+        } finally {
+          context.release(agendaId);
+        }
+
+        logger.info("Renumbered " + records.size() + " of " + agendaItems.size() + " items of Agenda " + agendaId);
+      }
+
+      JobTask task = jobProcessContext.getCurrentTask();
+      TaskOutput taskOutput = task.getTaskOutput();
+      taskOutput.setState(TaskState.SUCCESS);
+    }
+
+    public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("All tasks completed successfully");
+    }
+
+    public void completeWithError(JobCompletionContext jobCompletionContext) {
+       JobResult result = jobCompletionContext.getJobResult();
+
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
+    }
+
+    private static JobItem newJobItem(JobInitContext jobInitContext, String agendaId) {
+      JobItem jobItem = jobInitContext.newJobItem();
+      jobItem.setValue(AgendaApp.AGENDA_ID, agendaId);
+      return jobItem;
+    }
+  }
@@ -0,0 +1,94 @@
+package com.veeva.vault.custom.jobs;
+
+import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaRollups;
+import com.veeva.vault.custom.udc.Logger;
+import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.StringUtils;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.job.*;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.util.Iterator;
+import java.util.List;
+
+/*
+  This job rebuilds the rollup fields of Agendas (agenda__c) from their Agenda Items, correcting
+  any drift in the values maintained incrementally by trigger AgendaItemTrigger.  See AgendaRollups.
+
+  The Agendas are taken from job parameter "AgendaIds", a comma-separated list of Agenda ids.  If
+  it is not set, all Agendas are rebuilt.
+
+  The Agendas are split into job items of up to AgendaApp.QUERY_CHUNK_SIZE Agendas, each processed
+  in its own task.
+ */
+
+  @JobInfo(adminConfigurable = true, chunkSize = 1)
+  public class AgendaRollupReconciliation implements Job {
+
+    public JobInputSupplier init(JobInitContext jobInitContext) {
+
+      Logger logger = new Logger(jobInitContext.getJobLogger());
+
+      List<String> agendaIds = VaultCollections.newList();
+
+      String agendaIdsParam = jobInitContext.getJobParameter(AgendaApp.AGENDA_IDS, JobParamValueType.STRING);
+      if (agendaIdsParam != null && !agendaIdsParam.isEmpty()) {
+        for (String agendaId : StringUtils.split(agendaIdsParam, ",")) {
+          agendaIds.add(agendaId.trim());
+        }
+      } else {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query("select id from agenda__c").streamResults().iterator();
+        while (iter.hasNext()) {
+          agendaIds.add(iter.next().getValue("id", ValueType.STRING));
+        }
+      }
+
+      logger.info("Rebuilding rollups of " + agendaIds.size() + " Agendas.");
+
+      List<JobItem> jobItems = VaultCollections.newList();
+
+      for (List<String> chunk : Util.partition(agendaIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+        JobItem jobItem = jobInitContext.newJobItem();
+        jobItem.setValue(AgendaApp.AGENDA_IDS, Util.stringifyList(chunk, ","));
+        jobItems.add(jobItem);
+      }
+
+      return jobInitContext.newJobInput(jobItems);
+    }
+
+    public void process(JobProcessContext jobProcessContext) {
+
+      Logger logger = new Logger(jobProcessContext.getJobLogger());
+
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+
+        List<String> agendaIds = VaultCollections.newList();
+        for (String agendaId : StringUtils.split(jobItem.getValue(AgendaApp.AGENDA_IDS, JobValueType.STRING), ",")) {
+          agendaIds.add(agendaId);
+        }
+
+        int corrected = AgendaRollups.rebuild(agendaIds);
+
+        logger.info("Corrected the rollups of " + corrected + " of " + agendaIds.size() + " Agendas.");
+      }
+
+      JobTask task = jobProcessContext.getCurrentTask();
+      TaskOutput taskOutput = task.getTaskOutput();
+      taskOutput.setState(TaskState.SUCCESS);
+    }
+
+    public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("All tasks completed successfully");
+    }
+
+    public void completeWithError(JobCompletionContext jobCompletionContext) {
+       JobResult result = jobCompletionContext.getJobResult();
+
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
+    }
+  }
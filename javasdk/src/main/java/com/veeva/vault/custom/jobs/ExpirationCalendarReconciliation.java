@@ -0,0 +1,95 @@
+package com.veeva.vault.custom.jobs;
+
+import com.veeva.vault.custom.udc.ExpirationCalendar;
+import com.veeva.vault.custom.udc.Logger;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.StringUtils;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.job.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+  This job brings the expiration calendar (see ExpirationCalendar) up to date with the documents.
+  Document action UpdateExpirationCalendar only runs on state changes and on demand, so edits made
+  without a state change, e.g. a new expiration date, reach the calendar through this job.  It is
+  intended to run daily, before Job ExpirationUpcomingTasks.
+
+  By default the job refreshes the calendar records of the documents modified since the start of
+  the previous day (MODIFIED_WINDOW_DAYS), so that a missed or late run is covered by the next one.
+  When job parameter "Rebuild" is true, it refreshes every document of ExpirationCalendar.DOCUMENT_TYPES
+  and every document with a calendar record, which also removes the records of documents that were
+  deleted or no longer qualify.
+
+  The documents are split into job items of up to ExpirationCalendar.QUERY_CHUNK_SIZE documents,
+  each processed in its own task.
+ */
+
+  @JobInfo(adminConfigurable = true, chunkSize = 1)
+  public class ExpirationCalendarReconciliation implements Job {
+
+    private static final String REBUILD = "Rebuild";
+    private static final String DOC_IDS = "DocIds";
+
+    // number of days before today whose document modifications are picked up by an incremental run
+    private static final int MODIFIED_WINDOW_DAYS = 1;
+
+    public JobInputSupplier init(JobInitContext jobInitContext) {
+
+      Logger logger = new Logger(jobInitContext.getJobLogger());
+
+      boolean rebuild = Boolean.TRUE.equals(jobInitContext.getJobParameter(REBUILD, JobParamValueType.BOOLEAN));
+      LocalDate modifiedSince = rebuild ? null : LocalDate.now().minusDays(MODIFIED_WINDOW_DAYS);
+
+      List<String> docIds = ExpirationCalendar.findDocIds(modifiedSince);
+
+      logger.info(
+        (rebuild ? "Rebuilding the expiration calendar: " : "Refreshing the expiration calendar since " + modifiedSince + ": ") +
+          docIds.size() + " documents."
+      );
+
+      List<JobItem> jobItems = VaultCollections.newList();
+
+      for (List<String> chunk : Util.partition(docIds, ExpirationCalendar.QUERY_CHUNK_SIZE)) {
+        JobItem jobItem = jobInitContext.newJobItem();
+        jobItem.setValue(DOC_IDS, Util.stringifyList(chunk, ","));
+        jobItems.add(jobItem);
+      }
+
+      return jobInitContext.newJobInput(jobItems);
+    }
+
+    public void process(JobProcessContext jobProcessContext) {
+
+      Logger logger = new Logger(jobProcessContext.getJobLogger());
+
+      for (JobItem jobItem : jobProcessContext.getCurrentTask().getItems()) {
+
+        List<String> docIds = VaultCollections.newList();
+        for (String docId : StringUtils.split(jobItem.getValue(DOC_IDS, JobValueType.STRING), ",")) {
+          docIds.add(docId);
+        }
+
+        ExpirationCalendar.refresh(docIds);
+
+        logger.info("Refreshed the calendar records of " + docIds.size() + " documents.");
+      }
+
+      JobTask task = jobProcessContext.getCurrentTask();
+      TaskOutput taskOutput = task.getTaskOutput();
+      taskOutput.setState(TaskState.SUCCESS);
+    }
+
+    public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("All tasks completed successfully");
+    }
+
+    public void completeWithError(JobCompletionContext jobCompletionContext) {
+       JobResult result = jobCompletionContext.getJobResult();
+
+       JobLogger logger = jobCompletionContext.getJobLogger();
+       logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
+    }
+  }
@@ -3,6 +3,7 @@ package com.veeva.vault.custom.jobs;
 import com.veeva.vault.custom.udc.*;
 import com.veeva.vault.sdk.api.core.RollbackException;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.StringUtils;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
@@ -14,9 +15,13 @@ import com.veeva.vault.sdk.api.query.QueryResult;
 import com.veeva.vault.sdk.api.query.QueryService;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /*
   This Job:
@@ -26,23 +31,142 @@ import java.util.List;
   A record named "ExpirationPendingWorkflow" in object "VPROC Parameter Set" contains the parameters
   that determine when a workflow is started, and canceled, as well as the due date for the workflow task.
   See legacy document workflow "Expiration Pending" in lifecycle "Job Processing".
+
+  Start candidates are found incrementally.  The end of the expiration date range scanned by the last
+  successful run is kept in record "ExpirationPendingWorkflowState" (see ExpirationPendingState).  Each
+  run scans only the dates after that high-water mark, plus documents in the earlier part of the buffer
+  window that were modified since the last run.  The full WORKFLOW_START_BUFFER_DAYS window is scanned
+  when there is no high-water mark, or when missed runs have left it behind the window.
+
+  Work is partitioned in init().  Each JobItem carries up to "taskSize" (see ExpirationPendingParameters)
+  work items of a single action, either starts or cancels.  Each JobItem is processed as its own task,
+  so that tasks can run concurrently, and each task records the items that succeeded and failed in its
+  task output.
+
+  Each task also records the outcome of its items in JobCheckpoints.  init() drops items that already
+  succeeded in an earlier run (or whose cancellation was accepted within the last day), so a rerun after
+  a partial failure only retries the items that are left.
+
+  Cancels are asynchronous: each group of workflow tasks is cancelled by a Vault job, which is not
+  waited for.  The task records the cancel as unconfirmed, with the Vault job's id, and the job
+  confirms it with one status request per Vault job at the end of this run (see confirmCancels) and,
+  if still running then, at the start of the next run.  Cancels that are still open are reported as
+  such, not as done.
+
+  Dry run: when job parameter "DryRun" (or parameter "dryRun" in the parameter set) is true, init() and
+  the planning half of process() run as usual, but no workflows are started or cancelled and no state
+  or checkpoints are written.  The job log reports the number of documents, VQL queries and REST calls
+  a real run would need, and how long discovery took.
+
+  Expiration calendar: when parameter "useExpirationCalendar" is true, candidates are read from the
+  expiration calendar index (see ExpirationCalendar) instead of from documents, so that discovery cost
+  follows the number of due Materials rather than the size of the document base.  Each task then
+  records the workflows it started or found inactive in the calendar.
+
+  Start scheduling: starts are ordered by Expiration Date and limited by parameters "startRestCallBudget"
+  and "startWindowDays" (see ExpirationStartScheduler), so that they are spread over several runs rather
+  than all fired at once.  Deferred starts hold the high-water mark back, so the next run finds them again.
 */
 
-@JobInfo(adminConfigurable = true)
+@JobInfo(adminConfigurable = true, chunkSize = 1)
 public class ExpirationUpcomingTasks implements Job {
 
     // number of days  before the WORKFLOW_START_DAYS to create a range of dates to find jobs approaching expiration
     private static final long WORKFLOW_START_BUFFER_DAYS = 30;
 
-    private static final String ACTION = "action";
-    private static final String ACTION_START = "start";
-    private static final String ACTION_CANCEL = "cancel";
+    // maximum number of document ids in a single 'contains' filter on the workflows query
+    private static final int WORKFLOW_QUERY_CHUNK_SIZE = 200;
+
+    // maximum length of each list of items written to the task output
+    private static final int TASK_OUTPUT_MAX_LENGTH = 1500;
+
+    // name under which this job's checkpoints are recorded
+    private static final String CHECKPOINT_JOB_NAME = "ExpirationUpcomingTasks";
+
+    // number of days for which checkpoints are kept
+    private static final int CHECKPOINT_RETENTION_DAYS = 60;
+
+    // job parameter, JobItem value and task output value that mark a dry run
+    public static final String DRY_RUN = "DryRun";
+
+    // task output values holding the calls planned by a dry-run task
+    private static final String PLANNED_QUERIES = "plannedQueries";
+    private static final String PLANNED_REST_CALLS = "plannedRestCalls";
+
+    // REST calls needed to start a workflow: retrieve the user actions, then execute one
+    private static final int REST_CALLS_PER_START = 2;
 
     public JobInputSupplier init(JobInitContext jobInitContext) {
-      List<JobItem> jobItems = VaultCollections.newList();
+      JobLogger logger = jobInitContext.getJobLogger();
+      Instant discoveryStart = Instant.now();
+
       ExpirationPendingParameters appParams = new ExpirationPendingParameters();
-      findStartItems(jobInitContext, jobItems, appParams);
-      findCancelItems(jobInitContext, jobItems, appParams);
+      ExpirationPendingState state = new ExpirationPendingState();
+      ExpirationRunStats stats = new ExpirationRunStats().addQueries(2);  // parameters and state
+
+      Boolean dryRunParam = jobInitContext.getJobParameter(DRY_RUN, JobParamValueType.BOOLEAN);
+      boolean dryRun = Boolean.TRUE.equals(dryRunParam) || appParams.dryRun();
+      if (dryRun) {
+        logger.log("DRY RUN: no workflows will be started or cancelled.");
+      }
+
+      if (!dryRun) {
+        // cancels left open by the previous run; those that failed are found again below
+        reportOpenCancels(confirmCancels(logger), logger);
+      }
+
+      JobCheckpoints checkpoints = new JobCheckpoints(CHECKPOINT_JOB_NAME);
+
+      List<ExpirationWorkItem> startCandidates = skipFinished(
+        findStartItems(logger, appParams, state, stats), checkpoints, stats, logger
+      );
+
+      // most urgent starts first, within the REST call budget and window
+      ExpirationStartScheduler scheduler = new ExpirationStartScheduler(
+        appParams.startRestCallBudget().intValue(),
+        appParams.startWindowDays().intValue(),
+        REST_CALLS_PER_START,
+        appParams.workflowStartDays().intValue()
+      );
+      scheduler.schedule(startCandidates);
+      List<ExpirationWorkItem> startItems = scheduler.getScheduled();
+      if (!scheduler.getDeferred().isEmpty()) {
+        logger.log(
+          "Scheduled " + startItems.size() + " of " + startCandidates.size() + " start(s); " +
+            scheduler.getDeferred().size() + " deferred to the next run, from expiration date " +
+            scheduler.getDeferred().get(0).getExpirationDate()
+        );
+      }
+
+      resolveProjectManagers(startItems, stats);
+
+      if (!dryRun) {
+        // completeWithSuccess() will promote this to the high-water mark
+        state.begin(scheduler.highWaterMark(startScanEndDate(appParams)));
+      }
+      List<ExpirationWorkItem> cancelItems = skipFinished(
+        findCancelItems(logger, appParams, stats, dryRun), checkpoints, stats, logger
+      );
+
+      // starts and cancels are never mixed in the same task
+      int taskSize = appParams.taskSize().intValue();
+      List<JobItem> jobItems = VaultCollections.newList();
+      addJobItems(jobInitContext, jobItems, startItems, taskSize, dryRun);
+      addJobItems(jobInitContext, jobItems, cancelItems, taskSize, dryRun);
+
+      if (dryRun) {
+        stats
+          .addStartDocuments(startItems.size())
+          .addCancelDocuments(cancelItems.size())
+          .setDiscoveryMillis(Duration.between(discoveryStart, Instant.now()).toMillis())
+          .log(logger, "DRY RUN: discovery");
+      }
+
+      logger.log(
+        "Partitioned " + startItems.size() + " start(s) and " + cancelItems.size() + " cancel(s) into " +
+          jobItems.size() + " task(s) of up to " + taskSize + " item(s)."
+      );
+
       return jobInitContext.newJobInput(jobItems);
     }
 
@@ -52,36 +176,73 @@ public class ExpirationUpcomingTasks implements Job {
 
       List<JobItem> jobItems = jobProcessContext.getCurrentTask().getItems();
 
-      int errorsEncountered = 0;
+      List<ExpirationWorkItem> workItems = VaultCollections.newList();
+      ExpirationRunStats planned = new ExpirationRunStats();
+      boolean dryRun = false;
 
       for (JobItem jobItem : jobItems) {
-        String action = jobItem.getValue(ACTION, JobValueType.STRING);
-        if (action.equals(ACTION_START)) {
-          errorsEncountered += startExpirationPendingWorkflow(jobItem, logger);
-        }
-        else if (action.equals(ACTION_CANCEL)) {
-          errorsEncountered += cancelExpirationPendingTask(jobItem, logger);
-        }
-        else {
-          errorsEncountered++;
+        List<ExpirationWorkItem> items = ExpirationWorkItem.readAll(jobItem);
+        if (items.isEmpty()) {
           logger.log("Job item has no associated action.");
+          continue;
+        }
+        dryRun = Boolean.TRUE.equals(jobItem.getValue(DRY_RUN, JobValueType.BOOLEAN));
+        if (items.get(0).isStart()) {
+          for (ExpirationWorkItem item : items) {
+            startExpirationPendingWorkflow(item, logger, dryRun);
+          }
+          planned.addStartDocuments(items.size()).addRestCalls(items.size() * REST_CALLS_PER_START);
+        } else if (items.get(0).isCancel()) {
+          if (dryRun) {
+            planCancelExpirationPendingTasks(items, logger);
+          } else {
+            cancelExpirationPendingTasks(items, logger);
+          }
+          // one request to cancel for each batch, and one status request when the job completes
+          planned
+            .addCancelDocuments(items.size())
+            .addRestCalls(2 * ExpirationRunStats.batches(items.size(), VAPI.CANCEL_TASKS_MAX_BATCH));
         }
+        workItems.addAll(items);
       }
 
+      // lookup of existing checkpoint records when saving
+      planned.addQueries(ExpirationRunStats.batches(workItems.size(), JobCheckpoints.QUERY_CHUNK_SIZE));
+
       TaskOutput taskOutput = jobProcessContext.getCurrentTask().getTaskOutput();
 
-      if (errorsEncountered > 0) {
-        taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
-        taskOutput.setValue("firstError", "At least one error occurred.");
+      if (dryRun) {
+        planned.log(logger, "DRY RUN: planned work for this task");
+        taskOutput.setValue(DRY_RUN, "true");
+        taskOutput.setValue(PLANNED_QUERIES, String.valueOf(planned.getQueries()));
+        taskOutput.setValue(PLANNED_REST_CALLS, String.valueOf(planned.getRestCalls()));
       } else {
-        taskOutput.setState(TaskState.SUCCESS);
-        logger.log("Task successful");
+        JobCheckpoints checkpoints = new JobCheckpoints(CHECKPOINT_JOB_NAME);
+        for (ExpirationWorkItem item : workItems) {
+          checkpoints.record(item.getCheckpointKey(), item.getOutcome(), item.getMessage());
+        }
+        checkpoints.save();
+        if (new ExpirationPendingParameters().useExpirationCalendar()) {
+          updateExpirationCalendar(workItems);
+        }
       }
+
+      setTaskOutput(taskOutput, workItems, logger);
     }
 
     public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
         JobLogger logger = jobCompletionContext.getJobLogger();
         logger.log("All tasks completed successfully");
+        if (reportDryRun(jobCompletionContext)) {
+          return;  // a dry run leaves the high-water mark and checkpoints alone
+        }
+        // advance the high-water mark only when every item succeeded, so that failures are rescanned
+        ExpirationPendingState state = new ExpirationPendingState();
+        state.commit();
+        logger.log("Expiration date high-water mark is now " + state.lastExpirationDate());
+        reportOpenCancels(confirmCancels(logger), logger);
+        int purged = new JobCheckpoints(CHECKPOINT_JOB_NAME).purge(CHECKPOINT_RETENTION_DAYS);
+        logger.log("Purged " + purged + " checkpoint(s) older than " + CHECKPOINT_RETENTION_DAYS + " days");
     }
 
     public void completeWithError(JobCompletionContext jobCompletionContext) {
@@ -89,85 +250,333 @@ public class ExpirationUpcomingTasks implements Job {
 
         JobLogger logger = jobCompletionContext.getJobLogger();
         logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
+        if (!reportDryRun(jobCompletionContext)) {
+          reportOpenCancels(confirmCancels(logger), logger);
+        }
 
         List<JobTask> tasks = jobCompletionContext.getTasks();
         for (JobTask task : tasks) {
             TaskOutput taskOutput = task.getTaskOutput();
             if (TaskState.ERRORS_ENCOUNTERED.equals(taskOutput.getState())) {
                 logger.log(task.getTaskId() + " failed with error message " + taskOutput.getValue("firstError", JobValueType.STRING));
+                logger.log(task.getTaskId() + " failed items: " + taskOutput.getValue(JobCheckpoints.FAILED, JobValueType.STRING));
             }
         }
     }
 
     ////////////////////////////////////////////////////////////////////////
-    // Find materials for which to start new "Expiration Pending" workflows.
+    // If this was a dry run, log the total work planned by all tasks.
+    // Return true if this was a dry run.
+    ////////////////////////////////////////////////////////////////////////
+    private boolean reportDryRun(JobCompletionContext jobCompletionContext) {
+
+      List<JobTask> tasks = jobCompletionContext.getTasks();
+      if (tasks.isEmpty() || !"true".equals(tasks.get(0).getTaskOutput().getValue(DRY_RUN, JobValueType.STRING))) {
+        return false;
+      }
+
+      ExpirationRunStats total = new ExpirationRunStats();
+      for (JobTask task : tasks) {
+        TaskOutput taskOutput = task.getTaskOutput();
+        String queries = taskOutput.getValue(PLANNED_QUERIES, JobValueType.STRING);
+        String restCalls = taskOutput.getValue(PLANNED_REST_CALLS, JobValueType.STRING);
+        total
+          .addQueries(queries == null ? 0 : Integer.parseInt(queries))
+          .addRestCalls(restCalls == null ? 0 : Integer.parseInt(restCalls));
+      }
+      total.log(jobCompletionContext.getJobLogger(), "DRY RUN: calls planned for processing by " + tasks.size() + " task(s)");
+
+      return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Log the number of cancels whose Vault job has not finished.
+    ////////////////////////////////////////////////////////////////////////
+    private void reportOpenCancels(int openCancels, JobLogger logger) {
+      if (openCancels > 0) {
+        logger.log(openCancels + " workflow task cancel(s) still open, not done; they are confirmed by the next run.");
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Record the workflows that were started, and the workflow tasks that
+    // were cancelled, in the expiration calendar.
+    ////////////////////////////////////////////////////////////////////////
+    private void updateExpirationCalendar(List<ExpirationWorkItem> workItems) {
+
+      List<String> startedDocIds = VaultCollections.newList();
+      List<String> cancelledDocIds = VaultCollections.newList();
+
+      for (ExpirationWorkItem item : workItems) {
+        if (!JobCheckpoints.SUCCEEDED.equals(item.getOutcome())) {
+          continue;
+        }
+        if (item.isStart()) {
+          startedDocIds.add(new DocVersionIdParts(item.getDocVersionId()).id);
+        } else if (item.isCancel()) {
+          cancelledDocIds.add(item.getDocId());
+        }
+      }
+
+      ExpirationCalendar.markStarted(startedDocIds);
+      ExpirationCalendar.markInactive(cancelledDocIds);
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Return the work items that have not already been finished by an
+    // earlier run, according to the checkpoints.
+    ////////////////////////////////////////////////////////////////////////
+    private List<ExpirationWorkItem> skipFinished(
+      List<ExpirationWorkItem> workItems,
+      JobCheckpoints checkpoints,
+      ExpirationRunStats stats,
+      JobLogger logger)
+    {
+      if (workItems.isEmpty()) {
+        return workItems;
+      }
+
+      stats.addQueries(ExpirationRunStats.batches(workItems.size(), JobCheckpoints.QUERY_CHUNK_SIZE));
+
+      List<String> keys = VaultCollections.newList();
+      for (ExpirationWorkItem item : workItems) {
+        keys.add(item.getCheckpointKey());
+      }
+      Set<String> finished = checkpoints.findFinished(keys);
+
+      List<ExpirationWorkItem> remaining = VaultCollections.newList();
+      for (ExpirationWorkItem item : workItems) {
+        if (finished.contains(item.getCheckpointKey())) {
+          logger.log("Skipping " + item.getAction() + " for " + item.getLabel() + "; already finished in an earlier run.");
+        } else {
+          remaining.add(item);
+        }
+      }
+
+      return remaining;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Pack the work items into JobItems of up to taskSize items each.
     ////////////////////////////////////////////////////////////////////////
-    private void findStartItems(
+    private void addJobItems(
       JobInitContext jobInitContext,
       List<JobItem> jobItems,
-      ExpirationPendingParameters appParams)
+      List<ExpirationWorkItem> workItems,
+      int taskSize,
+      boolean dryRun)
     {
+      for (List<ExpirationWorkItem> partition : Util.partition(workItems, taskSize)) {
+        JobItem jobItem = jobInitContext.newJobItem();
+        ExpirationWorkItem.writeAll(jobItem, partition);
+        jobItem.setValue(DRY_RUN, dryRun);
+        jobItems.add(jobItem);
+      }
+    }
 
-      QueryService queryService = ServiceLocator.locate(QueryService.class);
+    ////////////////////////////////////////////////////////////////////////
+    // Record the items that succeeded, failed, or could not be confirmed
+    // in the task output, and set the task state.
+    ////////////////////////////////////////////////////////////////////////
+    private void setTaskOutput(TaskOutput taskOutput, List<ExpirationWorkItem> workItems, JobLogger logger) {
+
+      List<String> succeeded = VaultCollections.newList();
+      List<String> failed = VaultCollections.newList();
+      List<String> unconfirmed = VaultCollections.newList();
+      String firstError = null;
+
+      for (ExpirationWorkItem item : workItems) {
+        String outcome = item.getOutcome();
+        if (JobCheckpoints.SUCCEEDED.equals(outcome)) {
+          succeeded.add(item.getLabel());
+        } else if (JobCheckpoints.UNCONFIRMED.equals(outcome)) {
+          unconfirmed.add(item.getLabel());
+        } else {
+          failed.add(item.getLabel());
+          if (firstError == null) {
+            firstError = item.getLabel() + ": " + item.getMessage();
+          }
+        }
+      }
 
-      JobLogger logger = jobInitContext.getJobLogger();
+      taskOutput.setValue(JobCheckpoints.SUCCEEDED, Logger.truncate(Util.stringifyList(succeeded), TASK_OUTPUT_MAX_LENGTH));
+      taskOutput.setValue(JobCheckpoints.FAILED, Logger.truncate(Util.stringifyList(failed), TASK_OUTPUT_MAX_LENGTH));
+      taskOutput.setValue(JobCheckpoints.UNCONFIRMED, Logger.truncate(Util.stringifyList(unconfirmed), TASK_OUTPUT_MAX_LENGTH));
+
+      logger.log(
+        "Task processed " + workItems.size() + " item(s): " + succeeded.size() + " succeeded, " +
+          failed.size() + " failed, " + unconfirmed.size() + " unconfirmed."
+      );
+
+      if (failed.size() > 0) {
+        taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
+        taskOutput.setValue("firstError", firstError);
+      } else {
+        taskOutput.setState(TaskState.SUCCESS);
+        logger.log("Task successful");
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Find materials for which to start new "Expiration Pending" workflows.
+    ////////////////////////////////////////////////////////////////////////
+    private List<ExpirationWorkItem> findStartItems(
+      JobLogger logger,
+      ExpirationPendingParameters appParams,
+      ExpirationPendingState state,
+      ExpirationRunStats stats)
+    {
+
+      QueryService queryService = ServiceLocator.locate(QueryService.class);
 
       logger.log("Looking for materials pending expiration to start workflows...");
 
-      LocalDate dateNow = LocalDate.now();
-      LocalDate dateTo = dateNow.plusDays(appParams.workflowStartDays().longValue());
-      LocalDate dateFrom = dateTo.minusDays(WORKFLOW_START_BUFFER_DAYS);
+      LocalDate dateTo = startScanEndDate(appParams);
+      LocalDate bufferFrom = dateTo.minusDays(WORKFLOW_START_BUFFER_DAYS);
+      LocalDate dateFrom = bufferFrom;
 
-      StringBuilder sbQuery = new StringBuilder()
-        .append("select version_id, document_number__v, expiration_date__c")
-        .append("  from documents")
-        .append(" where toName(type__v) contains ('jobs__c', 'nprc__c', 'par__c', 'endoaesthetics__c')")
-        .append("   and status__v = steadyState()")
-        .append("   and pending_expiration_task_sent__c != true")
-        .append("   and expiration_date__c between ")
-          .append("'").append(dateFrom.toString()).append("'")
-          .append(" and ")
-          .append("'").append(dateTo.toString()).append("'");
+      LocalDate lastExpirationDate = state.lastExpirationDate();
+      LocalDate lastRunDate = state.lastRunDate();
+      boolean incremental = lastExpirationDate != null && lastRunDate != null && !lastExpirationDate.isBefore(bufferFrom);
+
+      if (incremental) {
+        dateFrom = lastExpirationDate.plusDays(1);
+        logger.log("Scanning expiration dates after the high-water mark " + lastExpirationDate.toString());
+      } else {
+        logger.log("No usable high-water mark; scanning the full " + WORKFLOW_START_BUFFER_DAYS + " day window");
+      }
 
-      logger.log("Executing VQL Query to find candidate materials: " + sbQuery.toString());
+      boolean useCalendar = appParams.useExpirationCalendar();
+
+      String query;
+      if (useCalendar) {
+        query = ExpirationCalendar.startCandidatesQuery(
+          dateFrom, dateTo, bufferFrom,
+          incremental ? lastExpirationDate : null,
+          incremental ? lastRunDate : null
+        );
+      } else {
+        query = documentStartCandidatesQuery(
+          dateFrom, dateTo, bufferFrom,
+          incremental ? lastExpirationDate : null,
+          lastRunDate
+        );
+      }
 
-      QueryResponse queryResponse = queryService.query(sbQuery.toString());
+      logger.log("Executing VQL Query to find candidate materials: " + query);
+
+      QueryResponse queryResponse = queryService.query(query);
+      stats.addQueries(1);
 
       logger.log("Found " + queryResponse.getResultCount() + " jobs in range.");
 
       Iterator<QueryResult> iter = queryResponse.streamResults().iterator();
 
+      List<ExpirationWorkItem> startItems = VaultCollections.newList();
+
       while (iter.hasNext()) {
         QueryResult qr = iter.next();
-        String docNbr = qr.getValue("document_number__v", ValueType.STRING);
-        String docVersionId = qr.getValue("version_id", ValueType.STRING);
+        String docNbr = qr.getValue(useCalendar ? "document_number__c" : "document_number__v", ValueType.STRING);
+        String docVersionId = qr.getValue(useCalendar ? "document_version_id__c" : "version_id", ValueType.STRING);
         LocalDate expirationDate = qr.getValue("expiration_date__c", ValueType.DATE);
         logger.log("Found " + docNbr + " v" + docVersionId + " with expiration date " + expirationDate.toString());
-        JobItem jobItem = jobInitContext.newJobItem();
-        jobItem.setValue(ACTION, ACTION_START);
-        jobItem.setValue("docNumber", docNbr);
-        jobItem.setValue("docVersionId", docVersionId);
-        jobItem.setValue("expirationDate", expirationDate);
-        jobItem.setValue("taskDueDays", appParams.taskDueDays());
-        jobItems.add(jobItem);
+        startItems.add(ExpirationWorkItem.newStart(docNbr, docVersionId, expirationDate, appParams.taskDueDays()));
       }
 
+      return startItems;
+
     }  // end findStartItems()
 
+    ////////////////////////////////////////////////////////////////////////
+    // Return the end of the expiration date range scanned for new
+    // workflows: workflowStartDays from today.
+    ////////////////////////////////////////////////////////////////////////
+    private LocalDate startScanEndDate(ExpirationPendingParameters appParams) {
+      return LocalDate.now().plusDays(appParams.workflowStartDays().longValue());
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Resolve the Project Managers for all scheduled start items at once,
+    // so that process() does not need a role lookup per document.
+    ////////////////////////////////////////////////////////////////////////
+    private void resolveProjectManagers(List<ExpirationWorkItem> startItems, ExpirationRunStats stats) {
+
+      if (startItems.isEmpty()) {
+        return;
+      }
+
+      List<String> docVersionIds = VaultCollections.newList();
+      for (ExpirationWorkItem item : startItems) {
+        docVersionIds.add(item.getDocVersionId());
+      }
+
+      Map<String, List<String>> projectManagers =
+        Util.getDocumentsUsersInRole(docVersionIds, "project_manager__c");
+      stats.addQueries(ExpirationRunStats.batches(docVersionIds.size(), Util.DOCUMENT_ROLES_BATCH_SIZE));
+
+      for (ExpirationWorkItem item : startItems) {
+        item.setPmUserIds(Util.stringifyList(projectManagers.get(item.getDocVersionId()), ","));
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Return the documents query for materials for which to start new
+    // "Expiration Pending" workflows.  If lastExpirationDate is not null,
+    // the scan is incremental.
+    ////////////////////////////////////////////////////////////////////////
+    private String documentStartCandidatesQuery(
+      LocalDate dateFrom,
+      LocalDate dateTo,
+      LocalDate bufferFrom,
+      LocalDate lastExpirationDate,
+      LocalDate lastRunDate)
+    {
+      StringBuilder sbQuery = new StringBuilder()
+        .append("select version_id, document_number__v, expiration_date__c")
+        .append("  from documents")
+        .append(" where toName(type__v) contains ").append(Util.vqlContains(ExpirationCalendar.DOCUMENT_TYPES))
+        .append("   and status__v = steadyState()")
+        .append("   and pending_expiration_task_sent__c != true");
+
+      if (lastExpirationDate != null) {
+        // new dates, plus already-scanned dates on documents changed since the last run
+        sbQuery
+          .append("   and (expiration_date__c between ")
+            .append("'").append(dateFrom.toString()).append("'")
+            .append(" and ")
+            .append("'").append(dateTo.toString()).append("'")
+          .append("     or (expiration_date__c between ")
+            .append("'").append(bufferFrom.toString()).append("'")
+            .append(" and ")
+            .append("'").append(lastExpirationDate.toString()).append("'")
+          .append("         and version_modified_date__v >= ")
+            .append("'").append(lastRunDate.toString()).append("T00:00:00.000Z'))");
+      } else {
+        sbQuery
+          .append("   and expiration_date__c between ")
+            .append("'").append(dateFrom.toString()).append("'")
+            .append(" and ")
+            .append("'").append(dateTo.toString()).append("'");
+      }
+
+      return sbQuery.toString();
+    }
+
     ////////////////////////////////////////////////////////////////////////
     // Find Materials for which to cancel existing "Expiration Pending"
     // workflows.
     ////////////////////////////////////////////////////////////////////////
-    private void findCancelItems(
-      JobInitContext jobInitContext,
-      List<JobItem> jobItems,
-      ExpirationPendingParameters appParams)
+    private List<ExpirationWorkItem> findCancelItems(
+      JobLogger logger,
+      ExpirationPendingParameters appParams,
+      ExpirationRunStats stats,
+      boolean dryRun)
     {
 
       QueryResponse queryResponse;
       Iterator<QueryResult> iter;
 
-      JobLogger logger = jobInitContext.getJobLogger();
+      List<ExpirationWorkItem> cancelItems = VaultCollections.newList();
 
       long workflowKillDays = appParams.workflowKillDays().longValue();
 
@@ -180,74 +589,105 @@ public class ExpirationUpcomingTasks implements Job {
 
       LocalDate workflowKillDate = LocalDate.now().plusDays(workflowKillDays);
 
-      queryResponse = queryService.query(
-        "select id, document_number__v, expiration_date__c" +
-        "  from documents" +
-        " where toName(lifecycle__v) = 'job_processing__c'" +
-        "   and toName(status__v) = 'approved_for_distribution__c'" +
-        "   and expiration_date__c <= '"+workflowKillDate.toString()+"'"
-      );
+      boolean useCalendar = appParams.useExpirationCalendar();
+
+      if (useCalendar) {
+        queryResponse = queryService.query(ExpirationCalendar.cancelCandidatesQuery(workflowKillDate));
+      } else {
+        queryResponse = queryService.query(
+          "select id, document_number__v, expiration_date__c" +
+          "  from documents" +
+          " where toName(lifecycle__v) = 'job_processing__c'" +
+          "   and toName(status__v) = 'approved_for_distribution__c'" +
+          "   and expiration_date__c <= '"+workflowKillDate.toString()+"'"
+        );
+      }
       iter = queryResponse.streamResults().iterator();
+      stats.addQueries(1);
 
-      List<String> docIds = VaultCollections.newList();
+      // document number keyed by document id, for hashed lookup of workflow documents
+      Map<String, String> docNumbers = VaultCollections.newMap();
 
       while (iter.hasNext()) {
         QueryResult queryResult = iter.next();
-        String docNbr = queryResult.getValue("document_number__v", ValueType.STRING);
+        String docNbr = queryResult.getValue(useCalendar ? "document_number__c" : "document_number__v", ValueType.STRING);
         LocalDate expirationDate = queryResult.getValue("expiration_date__c", ValueType.DATE);
         logger.log("Found " + docNbr + " with expiration date " + expirationDate.toString());
-        docIds.add(queryResult.getValue("id", ValueType.STRING));
+        docNumbers.put(queryResult.getValue(useCalendar ? "name__v" : "id", ValueType.STRING), docNbr);
       }
 
-      // QueryService does not support queries on the workflows object, so we need to use HTTP Callout...
-      VAPI vapi = new VAPI("local_connection__c");
-      vapi.setJobLogger(logger);
-      JsonArray data = vapi.executeQuery(
-        "select workflow_document_id__v, task_id__v" +
-        "  from workflows" +
-        " where workflow_name__v = 'Expiration Pending' and workflow_status__v = 'Active'"
-      );
-      if (vapi.failed()) {
-        String msg = "An error occurred executing workflows query: " +
-          vapi.getErrorType() + ": " + vapi.getErrorMessage();
-        logger.log(msg);
-        throw new RollbackException(ErrorType.OPERATION_FAILED, msg);
+      if (docNumbers.isEmpty()) {
+        logger.log("No materials found with imminent expiration dates.");
+        return cancelItems;
       }
 
-      for (int i=0; i<data.getSize(); i++) {
-        JsonObject jsonObject = data.getValue(i, JsonValueType.OBJECT);
-        String docId = jsonObject.getValue("workflow_document_id__v", JsonValueType.NUMBER).toString();
-        if (docIds.contains(docId)) {
-          logger.log("Expiration Date is imminent for " + docId);
-          JobItem jobItem = jobInitContext.newJobItem();
-          jobItem.setValue(ACTION, ACTION_CANCEL);
-          jobItem.setValue("docId", docId);
-          jobItem.setValue("taskId", jsonObject.getValue("task_id__v", JsonValueType.NUMBER).toString());
-          jobItems.add(jobItem);
+      // QueryService does not support queries on the workflows object, so we need to use HTTP Callout...
+      VAPI vapi = newVAPI(logger);
+
+      List<List<String>> docIdChunks = Util.partition(Util.toList(docNumbers.keySet()), WORKFLOW_QUERY_CHUNK_SIZE);
+
+      // documents found to have an active workflow
+      Set<String> activeDocIds = VaultCollections.newSet();
+
+      for (List<String> docIdChunk : docIdChunks) {
+
+        JsonArray data = vapi.executeQuery(
+          "select workflow_document_id__v, task_id__v" +
+          "  from workflows" +
+          " where workflow_name__v = 'Expiration Pending' and workflow_status__v = 'Active'" +
+          "   and workflow_document_id__v contains " + Util.vqlContainsNumbers(docIdChunk)
+        );
+        stats.addRestCalls(1);
+        if (vapi.failed()) {
+          String msg = "An error occurred executing workflows query: " +
+            vapi.getErrorType() + ": " + vapi.getErrorMessage();
+          logger.log(msg);
+          throw new RollbackException(ErrorType.OPERATION_FAILED, msg);
+        }
+
+        for (int i=0; i<data.getSize(); i++) {
+          JsonObject jsonObject = data.getValue(i, JsonValueType.OBJECT);
+          String docId = jsonObject.getValue("workflow_document_id__v", JsonValueType.NUMBER).toString();
+          if (docNumbers.containsKey(docId)) {
+            logger.log("Expiration Date is imminent for " + docNumbers.get(docId) + " (" + docId + ")");
+            String taskId = jsonObject.getValue("task_id__v", JsonValueType.NUMBER).toString();
+            cancelItems.add(ExpirationWorkItem.newCancel(docId, docNumbers.get(docId), taskId));
+            activeDocIds.add(docId);
+          }
         }
       }
 
+      if (useCalendar && !dryRun) {
+        // stop selecting calendar entries whose workflow has already ended
+        List<String> inactiveDocIds = Util.difference(docNumbers.keySet(), activeDocIds);
+        ExpirationCalendar.markInactive(inactiveDocIds);
+        logger.log("Marked " + inactiveDocIds.size() + " expiration calendar entries as having no active workflow.");
+      }
+
+      return cancelItems;
+
     }  // end findCancelItems()
 
     ////////////////////////////////////////////////////////////////////////
-    // Start a new "Pending Expiration" workflow.
-    // Return:
-    //   0 if successful
-    //   1 if an error occurred
+    // Start a new "Pending Expiration" workflow, and record the outcome on
+    // the work item.  In a dry run, only log the workflow that would be
+    // started.
     ////////////////////////////////////////////////////////////////////////
-    private int startExpirationPendingWorkflow(JobItem jobItem, JobLogger logger) {
+    private void startExpirationPendingWorkflow(ExpirationWorkItem item, JobLogger logger, boolean dryRun) {
 
-      String docNumber = jobItem.getValue("docNumber", JobValueType.STRING);
-      String docVersionId = jobItem.getValue("docVersionId", JobValueType.STRING);
-      LocalDate expirationDate = jobItem.getValue("expirationDate", JobValueType.DATE);
-      BigDecimal taskDueDays = jobItem.getValue("taskDueDays", JobValueType.NUMBER);
+      String docNumber = item.getDocNumber();
+      String docVersionId = item.getDocVersionId();
+      LocalDate expirationDate = item.getExpirationDate();
+      BigDecimal taskDueDays = item.getTaskDueDays();
 
       logger.log("Starting 'Expiration Pending' workflow for: " + docNumber);
 
-      List<String> userIds = Util.getDocumentUsersInRole(docVersionId, "project_manager__c");
+      String pmUserIds = item.getPmUserIds();
 
       List<HttpParam> workflowStartCriteria = VaultCollections.newList();
 
+      String[] userIds = (pmUserIds == null || pmUserIds.isEmpty()) ? new String[0] : StringUtils.split(pmUserIds, ",");
+
       for (String userId : userIds) {
         logger.log(docNumber + ": Found user in role Project Manager: " + userId);
         workflowStartCriteria.add(new HttpParam("user_control_multiple__c", "user:" + userId));
@@ -262,48 +702,218 @@ public class ExpirationUpcomingTasks implements Job {
 
       workflowStartCriteria.add(new HttpParam("date_control__c", taskDueDate.toString()));
 
+      if (dryRun) {
+        logger.log("DRY RUN: would execute 'Expiration Pending' workflow for " + docNumber +
+          " with " + userIds.length + " Project Manager(s) and task due date " + taskDueDate.toString());
+        item.succeed();
+        return;
+      }
+
       logger.log("Executing 'Expiration Pending' workflow for " + docNumber);
-      VAPI vapi = new VAPI("local_connection__c");
+      VAPI vapi = newVAPI(logger);
       vapi
-        .setJobLogger(logger)
         .executeUserAction(docVersionId, "expiration_pending_autostart", workflowStartCriteria);
       if (vapi.failed()) {
         logger.log(vapi.getErrorType() + ": " + vapi.getErrorMessage());
         logger.log("Unable to execute workflow for "+docNumber+".");
-        return 1;
+        item.fail(vapi.getErrorType() + ": " + vapi.getErrorMessage());
       } else {
         logger.log("Successfully executed workflow for "+docNumber+".");
-        return 0;
+        item.succeed();
       }
 
     }  // end startExpirationPendingWorkflow()
 
     ////////////////////////////////////////////////////////////////////////
-    // Cancel a "Pending Expiration" workflow task.
-    // Return:
-    //   0, if successful
-    //   1, if an error occurred
+    // Cancel "Pending Expiration" workflow tasks.  All task ids are sent
+    // together, in groups of up to VAPI.CANCEL_TASKS_MAX_BATCH.  Each group
+    // starts an asynchronous Vault job, which is not waited for: its tasks
+    // are recorded as unconfirmed, with the job id, and confirmed later by
+    // confirmCancels().  Tasks in a group that could not be sent fail.
     ////////////////////////////////////////////////////////////////////////
-    private int cancelExpirationPendingTask(JobItem jobItem, JobLogger logger) {
+    private void cancelExpirationPendingTasks(List<ExpirationWorkItem> items, JobLogger logger) {
 
-      String docId = jobItem.getValue("docId", JobValueType.STRING);
-      String taskId = jobItem.getValue("taskId", JobValueType.STRING);
+      // work item keyed by task id, to map outcomes back to the items
+      Map<String, ExpirationWorkItem> taskItems = VaultCollections.newMap();
+      for (ExpirationWorkItem item : items) {
+        taskItems.put(item.getTaskId(), item);
+      }
 
-      logger.log("Cancelling Pending Expiration task for " + docId);
+      logger.log("Cancelling " + taskItems.size() + " Pending Expiration task(s)...");
+
+      VAPI vapi = newVAPI(logger);
+
+      for (List<String> taskIds : Util.partition(Util.toList(taskItems.keySet()), VAPI.CANCEL_TASKS_MAX_BATCH)) {
+        BigDecimal jobId = vapi.cancelWorkflowTasks(taskIds);
+        if (vapi.failed()) {
+          String msg = vapi.getErrorType() + ": " + vapi.getErrorMessage();
+          logger.log("Unable to cancel workflow tasks: " + msg);
+          for (String taskId : taskIds) {
+            logger.log("Unable to cancel workflow task for " + taskItems.get(taskId).getLabel() + ".");
+            taskItems.get(taskId).fail(msg);
+          }
+        } else {
+          logger.log("Started job " + jobId + " to cancel " + taskIds.size() + " task(s).");
+          for (String taskId : taskIds) {
+            taskItems.get(taskId).cancelRequested(jobId);
+          }
+        }
+      }
 
-      VAPI vapi = new VAPI("local_connection__c");
-      vapi
+    }  // end cancelExpirationPendingTasks()
+
+    ////////////////////////////////////////////////////////////////////////
+    // Confirm the cancels whose Vault job was not yet confirmed (see
+    // cancelExpirationPendingTasks), with one status request per job and
+    // without waiting for jobs that are still running.  The tasks of a job
+    // that did not succeed are checked against the workflows object; those
+    // still active fail, so that the next run retries them.  Return the
+    // number of cancels that are still open.
+    ////////////////////////////////////////////////////////////////////////
+    private int confirmCancels(JobLogger logger) {
+
+      JobCheckpoints checkpoints = new JobCheckpoints(CHECKPOINT_JOB_NAME);
+
+      // open cancels, keyed by the id of their Vault job
+      Map<BigDecimal, List<ExpirationWorkItem>> jobCancels = VaultCollections.newMap();
+      Map<String, String> unconfirmed = checkpoints.findUnconfirmed();
+      for (String key : unconfirmed.keySet()) {
+        ExpirationWorkItem item = ExpirationWorkItem.fromCancelCheckpoint(key, unconfirmed.get(key));
+        if (item == null || item.getCancelJobId() == null) {
+          continue;
+        }
+        if (!jobCancels.containsKey(item.getCancelJobId())) {
+          jobCancels.put(item.getCancelJobId(), VaultCollections.newList());
+        }
+        jobCancels.get(item.getCancelJobId()).add(item);
+      }
+
+      if (jobCancels.isEmpty()) {
+        return 0;
+      }
+
+      VAPI vapi = newVAPI(logger);
+
+      List<ExpirationWorkItem> confirmed = VaultCollections.newList();
+      int open = 0;
+
+      for (BigDecimal jobId : jobCancels.keySet()) {
+
+        List<ExpirationWorkItem> items = jobCancels.get(jobId);
+
+        String jobStatus = vapi.getJobStatus(jobId);
+        if (vapi.failed()) {
+          logger.log("Unable to retrieve status of job " + jobId + ": " +
+            vapi.getErrorType() + ": " + vapi.getErrorMessage());
+          open += items.size();
+          continue;
+        }
+
+        if (!VAPI.isJobFinished(jobStatus)) {
+          logger.log("Job " + jobId + " has not finished (status " + jobStatus + "); " +
+            items.size() + " task cancellation(s) not yet confirmed.");
+          open += items.size();
+          continue;
+        }
+
+        if (VAPI.JOB_STATUS_SUCCESS.equals(jobStatus)) {
+          for (ExpirationWorkItem item : items) {
+            item.succeed();
+          }
+        } else {
+          logger.log("Job " + jobId + " finished with status " + jobStatus + "; checking its tasks...");
+
+          List<String> taskIds = VaultCollections.newList();
+          for (ExpirationWorkItem item : items) {
+            taskIds.add(item.getTaskId());
+          }
+          Set<String> activeTaskIds = findActiveTaskIds(vapi, taskIds, logger);
+          if (activeTaskIds == null) {
+            open += items.size();
+            continue;
+          }
+
+          for (ExpirationWorkItem item : items) {
+            if (activeTaskIds.contains(item.getTaskId())) {
+              item.fail("Job " + jobId + " finished with status " + jobStatus);
+            } else {
+              item.succeed();
+            }
+          }
+        }
+
+        for (ExpirationWorkItem item : items) {
+          if (JobCheckpoints.SUCCEEDED.equals(item.getOutcome())) {
+            logger.log("Successfully canceled workflow task for " + item.getLabel() + ".");
+          } else {
+            logger.log("Unable to cancel workflow task for " + item.getLabel() + ".");
+          }
+          checkpoints.record(item.getCheckpointKey(), item.getOutcome(), item.getMessage());
+          confirmed.add(item);
+        }
+      }
+
+      checkpoints.save();
+      if (new ExpirationPendingParameters().useExpirationCalendar()) {
+        updateExpirationCalendar(confirmed);
+      }
+
+      logger.log("Confirmed " + confirmed.size() + " workflow task cancel(s); " + open + " still open.");
+
+      return open;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Dry run of cancelExpirationPendingTasks: log the requests that would
+    // be made.
+    ////////////////////////////////////////////////////////////////////////
+    private void planCancelExpirationPendingTasks(List<ExpirationWorkItem> items, JobLogger logger) {
+      for (List<ExpirationWorkItem> batch : Util.partition(items, VAPI.CANCEL_TASKS_MAX_BATCH)) {
+        logger.log("DRY RUN: would cancel " + batch.size() + " Pending Expiration task(s) in one request.");
+        for (ExpirationWorkItem item : batch) {
+          logger.log("DRY RUN: would cancel workflow task for " + item.getLabel() + ".");
+          item.succeed();
+        }
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Return a Vault API client that logs to the job log, at the level set
+    // by parameters "logLevel" and "maxLogBodyLength".
+    ////////////////////////////////////////////////////////////////////////
+    private static VAPI newVAPI(JobLogger logger) {
+      ExpirationPendingParameters appParams = new ExpirationPendingParameters();
+      return new VAPI("local_connection__c")
         .setJobLogger(logger)
-        .cancelWorkflowTasks(VaultCollections.asList(taskId));
+        .setLogLevel(appParams.logLevel())
+        .setMaxLogBodyLength(appParams.maxLogBodyLength().intValue());
+    }
 
+    ////////////////////////////////////////////////////////////////////////
+    // Return the subset of the given workflow task ids that still belong to
+    // an active workflow, or null if the workflows query failed.
+    ////////////////////////////////////////////////////////////////////////
+    private Set<String> findActiveTaskIds(VAPI vapi, List<String> taskIds, JobLogger logger) {
+
+      JsonArray data = vapi.executeQuery(
+        "select task_id__v" +
+        "  from workflows" +
+        " where workflow_status__v = 'Active'" +
+        "   and task_id__v contains " + Util.vqlContainsNumbers(taskIds)
+      );
       if (vapi.failed()) {
-        logger.log("Unable to cancel workflow task for "+docId+".");
-        logger.log(vapi.getErrorType() + ": " + vapi.getErrorMessage());
-        return 1;
-      } else {
-        logger.log("Successfully canceled workflow task for "+docId+".");
-        return 0;
+        logger.log("An error occurred executing workflows query: " +
+          vapi.getErrorType() + ": " + vapi.getErrorMessage());
+        return null;
       }
 
-    }  // end cancelExpirationPendingTask()
-  }
+      Set<String> activeTaskIds = VaultCollections.newSet();
+      for (int i=0; i<data.getSize(); i++) {
+        JsonObject jsonObject = data.getValue(i, JsonValueType.OBJECT);
+        activeTaskIds.add(jsonObject.getValue("task_id__v", JsonValueType.NUMBER).toString());
+      }
+
+      return activeTaskIds;
+    }
+
+  }
\ No newline at end of file
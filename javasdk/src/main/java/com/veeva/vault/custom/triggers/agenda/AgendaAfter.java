@@ -1,13 +1,14 @@
 package com.veeva.vault.custom.triggers.agenda;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
 import com.veeva.vault.custom.udc.AgendaItemsList;
-import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.AgendaRollups;
+import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.sdk.api.core.TriggerOrder;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 import com.veeva.vault.sdk.api.data.RecordTrigger;
 import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
 import com.veeva.vault.sdk.api.data.RecordTriggerContext;
@@ -15,8 +16,20 @@ import com.veeva.vault.sdk.api.data.RecordEvent;
 import com.veeva.vault.sdk.api.data.RecordChange;
 
 import java.time.LocalDate;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+/**
+ * This trigger propagates changes to an Agenda's meeting time and meeting date:
+ *   - a new meeting time recalculates the start/end times of the Agenda's items, and the
+ *     Agenda's rollup end time, which is the end of the items' schedule (see AgendaRollups)
+ *   - a new meeting date is copied to the Meeting Date of the Agenda's documents
+ *
+ * Bulk updates are supported.  The items of all Agendas with a new meeting time are loaded with one
+ * query and saved in one batch.  The documents of all Agendas with a new meeting date are found and
+ * compared with one query per chunk and saved together, and those of Agendas with many documents
+ * are left to one run of Job AgendaMeetingDateSync (see AgendaApp.updateDocumentMeetingDates).
+ */
 
 @RecordTriggerInfo(
   object = "agenda__c",
@@ -30,61 +43,77 @@ public class AgendaAfter implements RecordTrigger {
 
     public void execute(RecordTriggerContext recordTriggerContext) {
 
-      List<RecordChange> recordChanges = recordTriggerContext.getRecordChanges();
+      // new meeting time and new meeting date of the changed agendas, keyed by agenda id
+      Map<String, String> newMeetingTimes = VaultCollections.newMap();
+      Map<String, LocalDate> newMeetingDates = VaultCollections.newMap();
 
-      if (recordChanges.size() > 1) {
-        return; // This trigger supports single-record operations only. But DO NOT throw an exception.
-      }
+      for (RecordChange inputRecord : recordTriggerContext.getRecordChanges()) {
+
+        Record newRecord = inputRecord.getNew();
+        Record oldRecord = inputRecord.getOld();
 
-      RecordChange inputRecord = recordChanges.get(0);
+        String agendaId = newRecord.getValue("id", ValueType.STRING);
 
-      Record newRecord = inputRecord.getNew();
-      Record oldRecord = inputRecord.getOld();
+        String newMeetingTime = newRecord.getValue(MeetingTimeFieldName, ValueType.STRING);
+        String oldMeetingTime = oldRecord.getValue(MeetingTimeFieldName, ValueType.STRING);
 
-      String agendaId = newRecord.getValue("id", ValueType.STRING);
+        if (
+             (oldMeetingTime != null && newMeetingTime == null) ||
+             (oldMeetingTime == null && newMeetingTime != null) ||
+             (newMeetingTime != null && !newMeetingTime.equals(oldMeetingTime))
+           )
+        {
+          newMeetingTimes.put(agendaId, newMeetingTime);
+        }
 
-      String newMeetingTime = newRecord.getValue(MeetingTimeFieldName, ValueType.STRING);
-      String oldMeetingTime = oldRecord.getValue(MeetingTimeFieldName, ValueType.STRING);
+        LocalDate newMeetingDate = newRecord.getValue(MeetingDateFieldName, ValueType.DATE);
+        LocalDate oldMeetingDate = oldRecord.getValue(MeetingDateFieldName, ValueType.DATE);
 
-      if (
-           (oldMeetingTime != null && newMeetingTime == null) ||
-           (oldMeetingTime == null && newMeetingTime != null) ||
-           (newMeetingTime != null && !newMeetingTime.equals(oldMeetingTime))
-         )
-      {
-        AgendaItemsList items = new AgendaItemsList(agendaId);
-        items.updateStartEndTimes(newMeetingTime);
-        items.saveChangedRecords();
+        if (
+            (oldMeetingDate != null && newMeetingDate == null) ||
+            (oldMeetingDate == null && newMeetingDate != null) ||
+            (newMeetingDate != null && !newMeetingDate.equals(oldMeetingDate))
+          ) {
+          newMeetingDates.put(agendaId, newMeetingDate);
+        }
       }
 
-      LocalDate newMeetingDate = newRecord.getValue(MeetingDateFieldName, ValueType.DATE);
-      LocalDate oldMeetingDate = oldRecord.getValue(MeetingDateFieldName, ValueType.DATE);
+      if (!newMeetingTimes.isEmpty()) {
+        AgendaItemContext.agendasChanged(Util.toList(newMeetingTimes.keySet()));
+        updateStartEndTimes(newMeetingTimes);
+      }
 
-      if (
-          (oldMeetingDate != null && newMeetingDate == null) ||
-          (oldMeetingDate == null && newMeetingDate != null) ||
-          (newMeetingDate != null && !newMeetingDate.equals(oldMeetingDate))
-        ) {
-        AgendaApp.updateDocumentMeetingDate(newMeetingDate, getDocIds(agendaId));
+      if (!newMeetingDates.isEmpty()) {
+        updateDocumentMeetingDates(newMeetingDates);
       }
 
     }  // end execute()
 
-    private static List<String> getDocIds(String agendaId) {
-      List<String> docIds = VaultCollections.newList();
+    private static void updateStartEndTimes(Map<String, String> newMeetingTimes) {
 
-      Iterator<QueryExecutionResult> iter = QueryUtil.query(
-        "select id from documents where agenda__c = '"+agendaId+"'"
-      ).streamResults().iterator();
+      Map<String, AgendaItemsList> agendaItemsLists = AgendaItemsList.forAgendas(Util.toList(newMeetingTimes.keySet()));
+
+      List<Record> records = VaultCollections.newList();
+      Map<String, String> endTimes = VaultCollections.newMap();
+      for (String agendaId : agendaItemsLists.keySet()) {
+        AgendaItemsList items = agendaItemsLists.get(agendaId);
+        items.updateStartEndTimes(newMeetingTimes.get(agendaId));
+        records.addAll(items.getChangedRecords());
+        endTimes.put(agendaId, items.getEndTime());
+      }
 
-      while (iter.hasNext()) {
-        QueryExecutionResult result = iter.next();
-        String docId = result.getValue("id", ValueType.STRING);
-        docIds.add(docId);
+      for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(batch);
       }
 
-      return docIds;
+      AgendaRollups.saveEndTimes(endTimes);
     }
 
-}
+    private static void updateDocumentMeetingDates(Map<String, LocalDate> newMeetingDates) {
+
+      Map<String, List<String>> agendaDocIds = AgendaApp.findAgendaDocIds(Util.toList(newMeetingDates.keySet()));
 
+      AgendaApp.updateDocumentMeetingDates(agendaDocIds, newMeetingDates);
+    }
+
+}
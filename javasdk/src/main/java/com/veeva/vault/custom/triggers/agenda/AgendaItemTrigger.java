@@ -0,0 +1,346 @@
+package com.veeva.vault.custom.triggers.agenda;
+
+import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.AgendaItemContext;
+import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.AgendaRecalcQueue;
+import com.veeva.vault.custom.udc.AgendaRollups;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.sdk.api.core.TriggerOrder;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordTrigger;
+import com.veeva.vault.sdk.api.data.RecordTriggerContext;
+import com.veeva.vault.sdk.api.data.RecordChange;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This trigger is the single trigger of the Agenda Item (agenda_item__c) object.  It runs these
+ * steps, which share the data they read through the request-scoped AgendaItemContext, so that an
+ * edit reads the Agenda's fields and the Vault's users at most once:
+ *
+ *   BEFORE_INSERT, BEFORE_UPDATE:
+ *     - document info: set the topic__c and user fields from the Document selected in the
+ *       document_unbound__c field (single-record operations only, unless the caller has set it
+ *       already; see AgendaItemContext.setDocumentInfoSet)
+ *   AFTER_INSERT, AFTER_UPDATE, AFTER_DELETE:
+ *     - ordering: manage the order and start/end times of the Agenda's items based on changes to
+ *       Order (order__c) or Duration (duration__c).  The other items are shifted around each item
+ *       inserted or moved; a bulk change also compacts the ordering of each Agenda involved.  While
+ *       an Agenda is being recalculated it is guarded (see AgendaItemContext.guard), so saves made
+ *       by the recalculation itself are not handled again.  For Agendas where recalculation is deferred
+ *       (see AgendaApp.isRecalcDeferred), only the order is updated, and the start/end time
+ *       recalculation is queued for Job AgendaItemRecalc (see AgendaRecalcQueue), so that edits on
+ *       large Agendas return immediately.
+ *     - rollups: update the Agenda's rollup fields (see AgendaRollups), including the end time of
+ *       each Agenda whose start/end times were recalculated by the ordering step, with one save of
+ *       the Agendas
+ */
+
+@RecordTriggerInfo(
+  object = "agenda_item__c",
+  events = {
+    RecordEvent.BEFORE_INSERT,
+    RecordEvent.BEFORE_UPDATE,
+    RecordEvent.AFTER_INSERT,
+    RecordEvent.AFTER_UPDATE,
+    RecordEvent.AFTER_DELETE
+  },
+  order = TriggerOrder.NUMBER_1
+)
+public class AgendaItemTrigger implements RecordTrigger {
+
+    public void execute(RecordTriggerContext recordTriggerContext) {
+
+      RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
+      List<RecordChange> recordChanges = recordTriggerContext.getRecordChanges();
+
+      if (recordEvent == RecordEvent.BEFORE_INSERT || recordEvent == RecordEvent.BEFORE_UPDATE) {
+        setDocumentInfo(recordEvent, recordChanges);
+        return;
+      }
+
+      AgendaItemContext context = AgendaItemContext.get();
+
+      // end times of the agendas recalculated by the ordering step, keyed by agenda id
+      Map<String, String> endTimes = VaultCollections.newMap();
+
+      updateOrdering(recordEvent, recordChanges, context, endTimes);
+
+      AgendaRollups.applyChanges(recordEvent, recordChanges, endTimes);
+
+    }  // end execute()
+
+    //////////////////////////////////////////////////////////////////////////////////
+    // document info step
+    //////////////////////////////////////////////////////////////////////////////////
+
+    private void setDocumentInfo(RecordEvent recordEvent, List<RecordChange> recordChanges) {
+
+      if (recordChanges.size() > 1) {
+        return; // This step supports single-record operations only (but DON'T throw and exception)
+      }
+      if (AgendaItemContext.get().isDocumentInfoSet()) {
+        return; // the caller has set the document info already
+      }
+
+      RecordChange inputRecord = recordChanges.get(0);
+
+      if (recordEvent == RecordEvent.BEFORE_INSERT) {
+
+        Record newRecord = inputRecord.getNew();
+        BigDecimal docId = newRecord.getValue("document_unbound__c", ValueType.NUMBER);
+        if (docId != null) {
+          AgendaApp.setAgendaItemDocumentInfo(newRecord, docId);
+        }
+
+      } else if (recordEvent == RecordEvent.BEFORE_UPDATE) {
+
+        Record newRecord = inputRecord.getNew();
+        Record oldRecord = inputRecord.getOld();
+
+        BigDecimal docIdNew = newRecord.getValue("document_unbound__c", ValueType.NUMBER);
+        BigDecimal docIdOld = oldRecord.getValue("document_unbound__c", ValueType.NUMBER);
+
+        if (
+          (docIdOld == null && docIdNew != null) ||
+          (docIdOld != null && docIdNew != null && !docIdNew.equals(docIdOld))
+        ) {
+          AgendaApp.setAgendaItemDocumentInfo(newRecord, docIdNew);
+        } else if (docIdOld != null && docIdNew == null) {
+          //clear out the PM field but leave topic__c alone
+          newRecord.setValue("project_owner__c", null);
+        }
+
+      }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+    // ordering step
+    //////////////////////////////////////////////////////////////////////////////////
+
+    private void updateOrdering(RecordEvent recordEvent, List<RecordChange> recordChanges, AgendaItemContext context, Map<String, String> endTimes) {
+
+      if (recordChanges.size() > 1) {
+        recalculateAgendas(recordEvent, recordChanges, context, endTimes);
+        return;
+      }
+
+      RecordChange inputRecord = recordChanges.get(0);
+
+      Record newRecord = null;
+      Record oldRecord = null;
+
+      if (recordEvent == RecordEvent.AFTER_INSERT || recordEvent == RecordEvent.AFTER_UPDATE) {
+        newRecord = inputRecord.getNew();
+      }
+      if (recordEvent == RecordEvent.AFTER_UPDATE || recordEvent == RecordEvent.AFTER_DELETE) {
+        oldRecord = inputRecord.getOld();
+      }
+
+      String agendaId;
+      String recordId;
+      BigDecimal oldOrder = null;
+      BigDecimal newOrder = null;
+      BigDecimal oldDuration = null;
+      BigDecimal newDuration = null;
+
+      if (newRecord == null) {
+        agendaId = oldRecord.getValue("agenda__c", ValueType.STRING);
+        recordId = oldRecord.getValue("id", ValueType.STRING);
+      } else {
+        agendaId = newRecord.getValue("agenda__c", ValueType.STRING);
+        recordId = newRecord.getValue("id", ValueType.STRING);
+      }
+
+      if (newRecord != null) {
+        newOrder = newRecord.getValue("order__c", ValueType.NUMBER);
+        newDuration = newRecord.getValue("duration__c", ValueType.NUMBER);
+      }
+
+      if (oldRecord != null) {
+        oldOrder = oldRecord.getValue("order__c", ValueType.NUMBER);
+        oldDuration = oldRecord.getValue("duration__c", ValueType.NUMBER);
+      }
+
+      if (!affectsSchedule(oldOrder, newOrder, oldDuration, newDuration)) {
+        return;
+      }
+
+      if (!context.guard(agendaId)) {
+        return;  // the agenda is already being recalculated in this request
+      }
+
+      try {
+        AgendaItemsList agendaItems = new AgendaItemsList(agendaId);
+
+        shiftItems(agendaItems, recordId, oldOrder, newOrder);
+
+        updateStartEndTimes(agendaId, agendaItems, context, endTimes);
+        agendaItems.saveChangedRecords();
+      } finally {
+        context.release(agendaId);
+      }
+
+    }
+
+    /*
+      For a bulk operation, reorder and update the start/end times of each agenda with a change that
+      affects its schedule, once per agenda, and save the changes together.  The other items are
+      shifted around each item inserted or moved in the agenda, in the order of the changes, as for a
+      single-record change; the ordering is then compacted, which closes the gaps left by removed
+      items.  Where two changes give the same order, the later one takes it.
+     */
+    private void recalculateAgendas(RecordEvent recordEvent, List<RecordChange> recordChanges, AgendaItemContext context, Map<String, String> endTimes) {
+
+      List<String> agendaIds = VaultCollections.newList();
+
+      for (RecordChange recordChange : recordChanges) {
+        Record oldRecord = recordEvent == RecordEvent.AFTER_INSERT ? null : recordChange.getOld();
+        Record newRecord = recordEvent == RecordEvent.AFTER_DELETE ? null : recordChange.getNew();
+
+        String oldAgendaId = oldRecord == null ? null : oldRecord.getValue("agenda__c", ValueType.STRING);
+        String newAgendaId = newRecord == null ? null : newRecord.getValue("agenda__c", ValueType.STRING);
+
+        if (oldAgendaId != null && newAgendaId != null && !oldAgendaId.equals(newAgendaId)) {
+          // moved to another agenda: removed from one, added to the other
+          addAgendaIfAffected(agendaIds, oldAgendaId, oldRecord, null);
+          addAgendaIfAffected(agendaIds, newAgendaId, null, newRecord);
+        } else {
+          addAgendaIfAffected(agendaIds, newAgendaId != null ? newAgendaId : oldAgendaId, oldRecord, newRecord);
+        }
+      }
+
+      // skip the agendas that are already being recalculated in this request
+      List<String> guardedIds = context.guard(agendaIds);
+
+      try {
+        List<Record> records = VaultCollections.newList();
+
+        // the items of all the agendas, read with one query per chunk of agendas
+        Map<String, AgendaItemsList> agendaItemsLists = AgendaItemsList.forAgendas(guardedIds);
+
+        for (String agendaId : guardedIds) {
+          AgendaItemsList agendaItems = agendaItemsLists.get(agendaId);
+          if (recordEvent != RecordEvent.AFTER_DELETE) {
+            for (RecordChange recordChange : recordChanges) {
+              Record oldRecord = recordEvent == RecordEvent.AFTER_INSERT ? null : recordChange.getOld();
+              shiftItems(agendaItems, agendaId, oldRecord, recordChange.getNew());
+            }
+          }
+          agendaItems.compressAgendaItemOrdering();
+          updateStartEndTimes(agendaId, agendaItems, context, endTimes);
+          records.addAll(agendaItems.getChangedRecords());
+        }
+
+        for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+          Util.batchSaveRecords(batch);
+        }
+      } finally {
+        context.release(guardedIds);
+      }
+    }
+
+    /*
+      Shift the other items of the agenda around an item that was inserted in, or moved to, the
+      agenda in a bulk change.  Changes to items of other agendas are ignored.
+     */
+    private static void shiftItems(AgendaItemsList agendaItems, String agendaId, Record oldRecord, Record newRecord) {
+      if (!agendaId.equals(newRecord.getValue("agenda__c", ValueType.STRING))) {
+        return;
+      }
+      BigDecimal oldOrder = null;
+      if (oldRecord != null && agendaId.equals(oldRecord.getValue("agenda__c", ValueType.STRING))) {
+        oldOrder = oldRecord.getValue("order__c", ValueType.NUMBER);
+      }
+      shiftItems(
+        agendaItems, newRecord.getValue("id", ValueType.STRING), oldOrder, newRecord.getValue("order__c", ValueType.NUMBER)
+      );
+    }
+
+    /*
+      Shift the other items around an item whose order changed from oldOrder to newOrder: after it
+      when it was added to the ordering or moved up, before it when it was moved down.
+     */
+    private static void shiftItems(AgendaItemsList agendaItems, String recordId, BigDecimal oldOrder, BigDecimal newOrder) {
+      if (oldOrder == null && newOrder != null) {
+        agendaItems.shiftDownAfter(recordId);
+      }
+      else if (oldOrder != null && newOrder != null) {
+        int iNewOrder = newOrder.intValue();
+        int iOldOrder = oldOrder.intValue();
+        if (iNewOrder < iOldOrder) {
+          agendaItems.shiftDownAfter(recordId);
+        } else if (iNewOrder > iOldOrder) {
+          agendaItems.shiftUpBefore(recordId);
+        }
+      }
+    }
+
+    private static void addAgendaIfAffected(List<String> agendaIds, String agendaId, Record oldRecord, Record newRecord) {
+      if (agendaId == null || agendaIds.contains(agendaId)) {
+        return;
+      }
+      boolean affected = affectsSchedule(
+        oldRecord == null ? null : oldRecord.getValue("order__c", ValueType.NUMBER),
+        newRecord == null ? null : newRecord.getValue("order__c", ValueType.NUMBER),
+        oldRecord == null ? null : oldRecord.getValue("duration__c", ValueType.NUMBER),
+        newRecord == null ? null : newRecord.getValue("duration__c", ValueType.NUMBER)
+      );
+      if (affected) {
+        agendaIds.add(agendaId);
+      }
+    }
+
+    /*
+      Return true if a change of an item's Order and Duration affects the order or start/end times
+      of the agenda's items:
+        - the item was added to the ordering, or its order changed
+        - the item was removed from the ordering, and it had a duration
+        - only the duration changed
+     */
+    private static boolean affectsSchedule(BigDecimal oldOrder, BigDecimal newOrder, BigDecimal oldDuration, BigDecimal newDuration) {
+
+      if (oldOrder == null && newOrder != null) {
+        return true;
+      }
+      if (oldOrder != null && newOrder != null && newOrder.intValue() != oldOrder.intValue()) {
+        return true;
+      }
+      if (oldOrder != null && newOrder == null) {
+        return oldDuration != null;
+      }
+
+      // no other change except a change in duration
+      return
+        (oldDuration == null && newDuration != null) ||
+        (oldDuration != null && newDuration == null) ||
+        (oldDuration != null && newDuration != null && newDuration.intValue() != oldDuration.intValue());
+    }
+
+    /*
+      Update the start/end times of the items now, and record the agenda's new end time for the
+      rollups step, or queue the update for Job AgendaItemRecalc if recalculation is deferred for
+      the agenda.
+     */
+    private void updateStartEndTimes(String agendaId, AgendaItemsList agendaItems, AgendaItemContext context, Map<String, String> endTimes) {
+      if (context.isRecalcDeferred(agendaId, agendaItems.size())) {
+        AgendaRecalcQueue.request(agendaId);
+        return;
+      }
+      String agendaMeetingTime = context.getMeetingTime(agendaId);
+      if (agendaMeetingTime != null) {
+        agendaItems.updateStartEndTimes(agendaMeetingTime);
+        endTimes.put(agendaId, agendaItems.getEndTime());
+      } else {
+        endTimes.put(agendaId, null);
+      }
+    }
+
+}
@@ -1,14 +1,15 @@
 package com.veeva.vault.custom.triggers.vproc_parameter_set;
 
+import com.veeva.vault.custom.udc.AgendaAppParameters;
 import com.veeva.vault.custom.udc.ErrorType;
 import com.veeva.vault.custom.udc.ExpirationPendingParameters;
+import com.veeva.vault.custom.udc.ParameterSetRegistry;
+import com.veeva.vault.custom.udc.ParameterSetSnapshot;
 import com.veeva.vault.sdk.api.core.RollbackException;
 import com.veeva.vault.sdk.api.core.TriggerOrder;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.data.*;
 
-import java.math.BigDecimal;
-
 /**
  *
  * This trigger protects parameters stored in object "VPROC Parameter Set" from unauthorized
@@ -17,6 +18,10 @@ import java.math.BigDecimal;
  * If a restricted update or delete must be made, then inactivate this trigger before making
  * the change.
  *
+ * Before an update, the new parameters are parsed and validated, so that a bad value is rejected
+ * when it is entered rather than when a job next reads it.  After an update, the cached snapshot
+ * of the parameter set held by ParameterSetRegistry is invalidated.
+ *
  */
 
 @RecordTriggerInfo(
@@ -52,21 +57,29 @@ public class OnUpdateDeleteVprocParameterSet implements RecordTrigger {
         throw new RollbackException(ErrorType.UPDATE_DENIED, "Cannot change the parameter set name.");
       }
 
-      if (oldName.equals("ExpirationPendingWorkflow")) {
-        checkPendingExpirationUpdate(newRecord, oldRecord, recordEvent);
+      if (recordEvent == RecordEvent.AFTER_UPDATE) {
+        ParameterSetRegistry.invalidate(oldName);
+        return;
       }
 
-    }
+      ParameterSetSnapshot snapshot = ParameterSetRegistry.parse(
+        newName,
+        newRecord.getValue("id", ValueType.STRING),
+        newRecord.getValue("parameters__c", ValueType.STRING)
+      );
 
-    // check to make sure all of the parameters are numbers
-    private void checkPendingExpirationUpdate(Record newRecord, Record oldRecord, RecordEvent recordEvent) {
-      if (recordEvent == RecordEvent.AFTER_UPDATE) {
-        BigDecimal bigDecimal;
-        ExpirationPendingParameters appParams = new ExpirationPendingParameters();
-        bigDecimal = appParams.workflowStartDays();
-        bigDecimal = appParams.taskDueDays();
-        bigDecimal = appParams.workflowKillDays();
+      if (oldName.equals(ExpirationPendingParameters.PARAMETER_SET_NAME)) {
+        checkPendingExpirationUpdate(snapshot);
+      } else if (oldName.equals(AgendaAppParameters.PARAMETER_SET_NAME)) {
+        new AgendaAppParameters(snapshot);
       }
+
+    }
+
+    // check to make sure all of the parameters have the expected types.  The constructor reads and
+    // validates every parameter, and throws if one is missing or mistyped.
+    private void checkPendingExpirationUpdate(ParameterSetSnapshot snapshot) {
+      new ExpirationPendingParameters(snapshot);
     }
 }
 
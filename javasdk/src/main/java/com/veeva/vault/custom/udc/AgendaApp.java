@@ -8,6 +8,8 @@ import com.veeva.vault.sdk.api.data.Record;
 import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.job.JobParameters;
+import com.veeva.vault.sdk.api.job.JobService;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.math.BigDecimal;
@@ -16,6 +18,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *  Methods needed to support the Review Agenda App.
@@ -25,50 +28,117 @@ import java.util.Map;
 public class AgendaApp {
 
   public static final String AGENDA_ID = "AgendaId";
+  public static final String AGENDA_IDS = "AgendaIds";
   public static final String AGENDA_NAME = "AgendaName";
   public static final String AGENDA_MEETNG_TIME = "AgendaMeetingTime";
-  public static final String AGENDA_ITEM_SEMAPHORE = "semaphore";
 
-  public static String getAgendaMeetingTime(String agendaId) {
-      return QueryUtil.queryOne(
-        "select meeting_time__c from agenda__c where id = '"+agendaId+"'"
-      ).getValue("meeting_time__c", ValueType.STRING);
+  public static final String DOC_IDS = "DocIds";
+  public static final String MEETING_DATE_SYNC_JOB_NAME = "agenda_meeting_date_sync__c";
+
+  // maximum number of ids in a single 'contains' filter
+  public static final int QUERY_CHUNK_SIZE = 200;
+
+  // maximum number of documents in a single saveDocumentVersions request
+  public static final int DOCUMENT_SAVE_BATCH_SIZE = 500;
+
+    /**
+     * Return true if start/end time recalculation for the Agenda should be deferred to Job
+     * AgendaItemRecalc rather than done while the user waits: when the Agenda has at least
+     * "deferredRecalcThreshold" items (see AgendaAppParameters), or its defer_recalculation__c
+     * field is set.
+     *
+     * @param itemCount - int.  number of Agenda Items in the Agenda
+     * @param deferRecalculation - Boolean.  the Agenda's defer_recalculation__c field
+     */
+    public static boolean isRecalcDeferred(int itemCount, Boolean deferRecalculation) {
+      return isRecalcDeferredBySize(itemCount) || Boolean.TRUE.equals(deferRecalculation);
+    }
+
+    private static boolean isRecalcDeferredBySize(int itemCount) {
+      int threshold = new AgendaAppParameters().deferredRecalcThreshold().intValue();
+      return threshold > 0 && itemCount >= threshold;
     }
 
     /**
-     *  Set Agenda records to inactive for Agendas whose meeting date is before Today.
+     *  Return the ids of the active Agendas whose meeting date is before Today.
      */
-    public static void deactivatePastAgendas(Logger logger) {
+    public static List<String> findPastAgendaIds() {
 
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-      List<String> inactive__v = VaultCollections.asList("inactive__v");
+      List<String> agendaIds = VaultCollections.newList();
 
       LocalDate dtToday = LocalDate.now();
       DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
       String strToday = dtToday.format(formatter);
 
       Iterator<QueryExecutionResult> iterator = QueryUtil.query(
-        "select id, name__v " +
+        "select id " +
           "from agenda__c "+
          "where meeting_date__c < '"+strToday+"' " +
            "and status__v = 'active__v'"
       ).streamResults().iterator();
 
-      if (! iterator.hasNext()) {
-        logger.info("No past Agendas found.");
+      while (iterator.hasNext()) {
+        agendaIds.add(iterator.next().getValue("id", ValueType.STRING));
       }
 
-      while (iterator.hasNext()) {
-        QueryExecutionResult result = iterator.next();
-        String id = result.getValue("id", ValueType.STRING);
-        String name = result.getValue("name__v", ValueType.STRING);
-        logger.info("Found agenda "+id+": '"+name+"'");
+      return agendaIds;
+    }
+
+    /**
+     *  Set the identified Agenda records to inactive, and return the ids of those that could not be.
+     *  If actionName is not null, the Agendas are deactivated in bulk by running that lifecycle user
+     *  action through the Vault API; otherwise each Agenda's status is saved separately.
+     *
+     * @param agendaIds - List<String>.  The Agenda ids.
+     * @param actionName - String.  Name of the agenda__c lifecycle user action that deactivates an Agenda, or null.
+     * @param logger - Logger.
+     */
+    public static List<String> deactivateAgendas(List<String> agendaIds, String actionName, Logger logger) {
+
+      List<String> failedIds = VaultCollections.newList();
+
+      if (actionName != null) {
+        VAPI vapi = new VAPI("local_connection__c");
+        for (List<String> chunk : Util.partition(agendaIds, VAPI.OBJECT_ACTION_MAX_BATCH)) {
+          List<String> chunkFailedIds = vapi.executeObjectAction("agenda__c", actionName, chunk);
+          if (vapi.failed()) {
+            logger.error("Unable to deactivate " + chunk.size() + " Agendas: " +
+              vapi.getErrorType() + ": " + vapi.getErrorMessage());
+            failedIds.addAll(chunk);
+          } else {
+            failedIds.addAll(chunkFailedIds);
+          }
+        }
+        return failedIds;
+      }
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      List<String> inactive__v = VaultCollections.asList("inactive__v");
+
+      for (String id : agendaIds) {
         Record record = recordService.newRecordWithId("agenda__c", id);
         record.setValue("status__v", inactive__v);
         Util.saveRecord(record);  // cannot update status__v in batch for parent objects
       }
+
+      return failedIds;
     }
 
+  // document fields copied to an Agenda Item, see setAgendaItemDocumentInfo
+  private static final String DOCUMENT_INFO_FIELDS =
+    "document_number__v," +
+    "    toName(status__v) as status," +
+    "    toName(marc_review_tier__c) as marc_review_tier," +
+    "    planned_first_use_date__c," +
+    "    review_due_date__c," +
+    "    pm_review_due_date__c, " +
+    "    discussion_time_in_minutes__c";
+
+  // document roles whose users are copied to an Agenda Item, see setAgendaItemDocumentInfo
+  private static final List<String> DOCUMENT_INFO_ROLES = VaultCollections.asList(
+    "owner__c", "project_manager__c", "medical__c", "legal__c", "regulatory__c", "compliance__c", "reviewer__c"
+  );
+
   /**
    This method updates an Agenda Item record (agenda_item__c) with field values
    from the Document.
@@ -79,18 +149,84 @@ public class AgendaApp {
   public static void setAgendaItemDocumentInfo(Record record, BigDecimal docId) {
 
     int intDocId = docId.intValue();
-    LocalDate date = null;
 
     QueryExecutionResult queryResult = QueryUtil.queryOne(
-      "select document_number__v," +
-      "    toName(status__v) as status," +
-      "    toName(marc_review_tier__c) as marc_review_tier," +
-      "    planned_first_use_date__c," +
-      "    review_due_date__c," +
-      "    pm_review_due_date__c, " +
-      "    discussion_time_in_minutes__c" +
-      "  from documents where id = " + intDocId
+      "select " + DOCUMENT_INFO_FIELDS + "  from documents where id = " + intDocId
     );
+    Map<String, List<String>> roleUsersMap = Util.getUsersInDocumentRoles(intDocId, DOCUMENT_INFO_ROLES);
+
+    setAgendaItemDocumentInfo(record, queryResult, roleUsersMap);
+  }
+
+  /**
+   Same as setAgendaItemDocumentInfo(record, docId), for several Agenda Items, each from the
+   Document in its document_unbound__c field (records without one are left unchanged).  The
+   Documents are read with one query per chunk, and their roles with one DocumentRoleService
+   request per role and chunk.
+
+    @param records - Agenda Item records
+   */
+  public static void setAgendaItemsDocumentInfo(List<Record> records) {
+
+    // the records, keyed by document id
+    Map<String, List<Record>> recordsByDocId = VaultCollections.newMap();
+    for (Record record : records) {
+      BigDecimal docId = record.getValue("document_unbound__c", ValueType.NUMBER);
+      if (docId == null) {
+        continue;
+      }
+      String key = docId.toBigInteger().toString();
+      if (!recordsByDocId.containsKey(key)) {
+        recordsByDocId.put(key, VaultCollections.newList());
+      }
+      recordsByDocId.get(key).add(record);
+    }
+
+    for (List<String> chunk : Util.partition(Util.toList(recordsByDocId.keySet()), QUERY_CHUNK_SIZE)) {
+
+      // the document fields and role users, keyed by document version id
+      Map<String, QueryExecutionResult> queryResults = VaultCollections.newMap();
+      Map<String, Map<String, List<String>>> roleUsersMaps = VaultCollections.newMap();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id, version_id, " + DOCUMENT_INFO_FIELDS + "  from documents where id contains " + Util.vqlContainsNumbers(chunk)
+      ).streamResults().iterator();
+
+      while (iter.hasNext()) {
+        QueryExecutionResult queryResult = iter.next();
+        String docVersionId = queryResult.getValue("version_id", ValueType.STRING);
+        queryResults.put(docVersionId, queryResult);
+        roleUsersMaps.put(docVersionId, VaultCollections.newMap());
+      }
+
+      List<String> docVersionIds = Util.toList(queryResults.keySet());
+
+      for (String roleName : DOCUMENT_INFO_ROLES) {
+        Map<String, List<String>> usersByDocVersion = Util.getDocumentsUsersInRole(docVersionIds, roleName);
+        for (String docVersionId : docVersionIds) {
+          List<String> roleUsers = usersByDocVersion.get(docVersionId);
+          if (roleUsers != null && !roleUsers.isEmpty()) {
+            roleUsersMaps.get(docVersionId).put(roleName, roleUsers);
+          }
+        }
+      }
+
+      for (String docVersionId : docVersionIds) {
+        QueryExecutionResult queryResult = queryResults.get(docVersionId);
+        for (Record record : recordsByDocId.get(queryResult.getValue("id", ValueType.STRING))) {
+          setAgendaItemDocumentInfo(record, queryResult, roleUsersMaps.get(docVersionId));
+        }
+      }
+    }
+  }
+
+  // Set the Agenda Item fields from the Document's fields and the users in its roles, keyed by role name.
+  private static void setAgendaItemDocumentInfo(
+    Record record, QueryExecutionResult queryResult, Map<String, List<String>> roleUsersMap
+  ) {
+
+    LocalDate date = null;
+
     String documentNumber = queryResult.getValue("document_number__v", ValueType.STRING);
     String status = queryResult.getValue("status", ValueType.PICKLIST_VALUES).get(0);
     if (status.equals("in_periodic_review__c") || status.equals("expiration_extension_in_review__c")) {
@@ -108,18 +244,9 @@ public class AgendaApp {
     BigDecimal discussionTime = queryResult.getValue("discussion_time_in_minutes__c", ValueType.NUMBER);
     record.setValue("duration__c", discussionTime);
 
-    List<String> roleNames = VaultCollections.newList();
-    roleNames.add("owner__c");
-    roleNames.add("project_manager__c");
-    roleNames.add("medical__c");
-    roleNames.add("legal__c");
-    roleNames.add("regulatory__c");
-    roleNames.add("compliance__c");
-    roleNames.add("reviewer__c");
-    Map<String, List<String>> roleUsersMap = Util.getUsersInDocumentRoles(intDocId, roleNames);
     List<String> usersInRole;  // list of user ID's
 
-    VaultUsers vaultUsers = new VaultUsers();
+    VaultUsers vaultUsers = AgendaItemContext.get().getVaultUsers();
 
     // set the Owner and Project Manager fields.  These are a User Object Reference fields...
 
@@ -195,27 +322,300 @@ public class AgendaApp {
 
   }
 
+  // Agenda Item fields copied to a new Agenda Item, see copyAgendaItemFields, by value type
+  private static final List<String> ITEM_TEXT_FIELDS = VaultCollections.asList(
+    "topic__c", "notes__c", "project_owner__c", "document_owner__c",
+    "medical1__c", "legal1__c", "regulatory1__c", "compliance1__c", "reviewer1__c"
+  );
+  private static final List<String> ITEM_NUMBER_FIELDS = VaultCollections.asList(
+    "duration__c", "document_unbound__c"
+  );
+  private static final List<String> ITEM_DATE_FIELDS = VaultCollections.asList(
+    "date_of_first_use__c", "review_due_date__c", "pm_review_due_date__c"
+  );
+  private static final List<String> ITEM_PICKLIST_FIELDS = VaultCollections.asList(
+    "marc_review_tier__c"
+  );
+
+  /**
+   Return the names of the Agenda Item fields copied by copyAgendaItemFields, to select them in
+   a query of agenda_item__c.
+   */
+  public static List<String> getAgendaItemCopyFields() {
+    List<String> fieldNames = VaultCollections.newList();
+    fieldNames.addAll(ITEM_TEXT_FIELDS);
+    fieldNames.addAll(ITEM_NUMBER_FIELDS);
+    fieldNames.addAll(ITEM_DATE_FIELDS);
+    fieldNames.addAll(ITEM_PICKLIST_FIELDS);
+    return fieldNames;
+  }
+
+  /**
+   Copy the topic, notes, duration, document and document info of an Agenda Item to a new Agenda
+   Item record, e.g. when the item is copied or moved to another Agenda.  The values are the
+   item's own, so they are not read again from the Document.
+
+    @param source - the Agenda Item, queried with the fields of getAgendaItemCopyFields()
+    @param record - the new Agenda Item record
+   */
+  public static void copyAgendaItemFields(QueryExecutionResult source, Record record) {
+    for (String fieldName : ITEM_TEXT_FIELDS) {
+      record.setValue(fieldName, source.getValue(fieldName, ValueType.STRING));
+    }
+    for (String fieldName : ITEM_NUMBER_FIELDS) {
+      record.setValue(fieldName, source.getValue(fieldName, ValueType.NUMBER));
+    }
+    for (String fieldName : ITEM_DATE_FIELDS) {
+      record.setValue(fieldName, source.getValue(fieldName, ValueType.DATE));
+    }
+    for (String fieldName : ITEM_PICKLIST_FIELDS) {
+      record.setValue(fieldName, source.getValue(fieldName, ValueType.PICKLIST_VALUES));
+    }
+  }
+
   /**
-   * updateDocumentMeetingDate
+   * findAgendaItemIds
    *
-   * Update the 'Meeting Date' field (meeting_review_date__c) on the documents identified
-   * by the list of document Ids.
+   * Return the ids of the Agenda Items (agenda_item__c) associated with the identified document
+   * versions, keyed by agendaItemKey(agendaId, docVersionId).
    *
-   * @param meetingDate - LocalDate.  The meeting date.
-   * @param docIds  - List<String>.  The list of docIds.
+   * @param docVersionIds - List<String>.  The document version ids.
+   */
+    public static Map<String, String> findAgendaItemIds(List<String> docVersionIds) {
+
+      Map<String, String> agendaItemIds = VaultCollections.newMap();
+
+      for (List<String> chunk : Util.partition(docVersionIds, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, agenda__c, document__c from agenda_item__c" +
+          " where document__c contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          agendaItemIds.put(
+            agendaItemKey(result.getValue("agenda__c", ValueType.STRING), result.getValue("document__c", ValueType.STRING)),
+            result.getValue("id", ValueType.STRING)
+          );
+        }
+      }
+
+      return agendaItemIds;
+    }
+
+  /**
+   * Return the key of an Agenda Item in the map returned by findAgendaItemIds.
+   */
+    public static String agendaItemKey(String agendaId, String docVersionId) {
+      return agendaId + ":" + docVersionId;
+    }
+
+  /**
+   * getAgendaMeetingDates
+   *
+   * Return the meeting dates (meeting_date__c) of the identified Agendas, keyed by Agenda id.
+   * Agendas without a meeting date are not included.
+   *
+   * @param agendaIds - List<String>.  The Agenda ids.
+   */
+    public static Map<String, LocalDate> getAgendaMeetingDates(List<String> agendaIds) {
+
+      Map<String, LocalDate> meetingDates = VaultCollections.newMap();
+
+      for (List<String> chunk : Util.partition(agendaIds, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, meeting_date__c from agenda__c where id contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          LocalDate meetingDate = result.getValue("meeting_date__c", ValueType.DATE);
+          if (meetingDate != null) {
+            meetingDates.put(result.getValue("id", ValueType.STRING), meetingDate);
+          }
+        }
+      }
+
+      return meetingDates;
+    }
+
+  /**
+   * findAgendaDocIds
+   *
+   * Return the ids of the documents that reference the identified Agendas in their Agenda field
+   * (agenda__c), keyed by Agenda id.  A document that references several of the Agendas is listed
+   * under one of them only.
+   *
+   * @param agendaIds - List<String>.  The Agenda ids.
    */
-    public static void updateDocumentMeetingDate(LocalDate meetingDate, List<String> docIds) {
+    public static Map<String, List<String>> findAgendaDocIds(List<String> agendaIds) {
+
+      Map<String, List<String>> agendaDocIds = VaultCollections.newMap();
+
+      for (List<String> chunk : Util.partition(agendaIds, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, agenda__c from documents where agenda__c contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          List<String> docAgendas = result.getValue("agenda__c", ValueType.REFERENCES);
+          if (docAgendas == null) {
+            continue;
+          }
+          String docAgendaId = null;
+          for (String agendaId : docAgendas) {
+            if (chunk.contains(agendaId)) {
+              docAgendaId = agendaId;
+            }
+          }
+          if (docAgendaId == null) {
+            continue;
+          }
+          if (!agendaDocIds.containsKey(docAgendaId)) {
+            agendaDocIds.put(docAgendaId, VaultCollections.newList());
+          }
+          agendaDocIds.get(docAgendaId).add(result.getValue("id", ValueType.STRING));
+        }
+      }
+
+      return agendaDocIds;
+    }
+
+  /**
+   * updateDocumentMeetingDates
+   *
+   * Update the 'Meeting Date' field (meeting_review_date__c) on the documents of several Agendas
+   * to each Agenda's meeting date.  Only documents whose Meeting Date differs are written: the
+   * documents of all the Agendas are read with one query per chunk, and those of Agendas with fewer
+   * than "backgroundMeetingDateThreshold" changed documents (see AgendaAppParameters) are saved
+   * together in batches.  The other Agendas are left to a single run of Job AgendaMeetingDateSync,
+   * so that the user does not wait for them.  The job is given the Agendas, not the dates: it reads
+   * their documents and meeting dates when it runs, so that a job started for an earlier change of
+   * a date cannot overwrite a later one.
+   *
+   * @param agendaDocIds - Map<String, List<String>>.  The document ids, keyed by Agenda id.  An empty
+   *   Agenda id stands for documents without an Agenda, whose Meeting Date is cleared.
+   * @param meetingDates - Map<String, LocalDate>.  The meeting dates, keyed by Agenda id.  Agendas
+   *   without an entry have no meeting date.
+   */
+    public static void updateDocumentMeetingDates(Map<String, List<String>> agendaDocIds, Map<String, LocalDate> meetingDates) {
+
+      List<String> allDocIds = VaultCollections.newList();
+      for (List<String> docIds : agendaDocIds.values()) {
+        allDocIds.addAll(docIds);
+      }
+      Map<String, LocalDate> currentDates = getDocumentMeetingDates(allDocIds);
+
+      int threshold = new AgendaAppParameters().backgroundMeetingDateThreshold().intValue();
 
       DocumentService documentService = ServiceLocator.locate(DocumentService.class);
       List<DocumentVersion> documentVersions = VaultCollections.newList();
+      Set<String> writtenDocIds = VaultCollections.newSet();
+      List<String> syncAgendaIds = VaultCollections.newList();
+
+      for (String agendaId : agendaDocIds.keySet()) {
+        LocalDate meetingDate = meetingDates.get(agendaId);
+
+        List<String> changedDocIds = VaultCollections.newList();
+        for (String docId : agendaDocIds.get(agendaId)) {
+          if (currentDates.containsKey(docId) && !sameDate(meetingDate, currentDates.get(docId))) {
+            changedDocIds.add(docId);
+          }
+        }
+
+        if (!agendaId.isEmpty() && threshold > 0 && changedDocIds.size() >= threshold) {
+          syncAgendaIds.add(agendaId);
+          continue;
+        }
+
+        for (String docId : changedDocIds) {
+          if (writtenDocIds.add(docId)) {
+            DocumentVersion documentVersion = documentService.newDocumentWithId(docId);
+            documentVersion.setValue("meeting_review_date__c", meetingDate);
+            documentVersions.add(documentVersion);
+          }
+        }
+      }
+
+      for (List<DocumentVersion> batch : Util.partition(documentVersions, DOCUMENT_SAVE_BATCH_SIZE)) {
+        documentService.saveDocumentVersions(batch);
+      }
+
+      if (!syncAgendaIds.isEmpty()) {
+        JobService jobService = ServiceLocator.locate(JobService.class);
+        JobParameters jobParameters = jobService.newJobParameters(MEETING_DATE_SYNC_JOB_NAME);
+        jobParameters.setValue(AGENDA_IDS, Util.stringifyList(syncAgendaIds, ","));
+        jobService.runJob(jobParameters);
+      }
+    }
+
+  /**
+   * updateDocumentMeetingDateNow
+   *
+   * Same as updateDocumentMeetingDates for one Agenda, but always updates the documents in the
+   * current request.  Returns the number of documents written.
+   *
+   * @param meetingDate - LocalDate.  The meeting date.
+   * @param docIds  - List<String>.  The list of docIds.
+   */
+    public static int updateDocumentMeetingDateNow(LocalDate meetingDate, List<String> docIds) {
+      List<String> changedDocIds = findChangedMeetingDates(meetingDate, docIds);
+      saveDocumentMeetingDate(meetingDate, changedDocIds);
+      return changedDocIds.size();
+    }
+
+    // Return the ids of the documents whose Meeting Date is not already meetingDate.
+    private static List<String> findChangedMeetingDates(LocalDate meetingDate, List<String> docIds) {
+
+      List<String> changedDocIds = VaultCollections.newList();
+
+      Map<String, LocalDate> currentDates = getDocumentMeetingDates(docIds);
+      for (String docId : currentDates.keySet()) {
+        if (!sameDate(meetingDate, currentDates.get(docId))) {
+          changedDocIds.add(docId);
+        }
+      }
+
+      return changedDocIds;
+    }
+
+    // Return the current Meeting Date of the documents, keyed by document id.  Every document found
+    // has an entry, with a null value if it has no Meeting Date.
+    private static Map<String, LocalDate> getDocumentMeetingDates(List<String> docIds) {
 
-      for (String docId: docIds) {
-        DocumentVersion documentVersion = documentService.newDocumentWithId(docId);
-        documentVersion.setValue("meeting_review_date__c",meetingDate);
-        documentVersions.add(documentVersion);
+      Map<String, LocalDate> currentDates = VaultCollections.newMap();
+
+      for (List<String> chunk : Util.partition(docIds, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, meeting_review_date__c from documents where id contains " + Util.vqlContainsNumbers(chunk)
+        ).streamResults().iterator();
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          currentDates.put(result.getValue("id", ValueType.STRING), result.getValue("meeting_review_date__c", ValueType.DATE));
+        }
       }
 
-      documentService.saveDocumentVersions(documentVersions);
+      return currentDates;
+    }
+
+    private static boolean sameDate(LocalDate date, LocalDate otherDate) {
+      return (date == null) ? otherDate == null : date.equals(otherDate);
+    }
+
+    private static void saveDocumentMeetingDate(LocalDate meetingDate, List<String> docIds) {
+
+      DocumentService documentService = ServiceLocator.locate(DocumentService.class);
+
+      for (List<String> chunk : Util.partition(docIds, DOCUMENT_SAVE_BATCH_SIZE)) {
+        List<DocumentVersion> documentVersions = VaultCollections.newList();
+
+        for (String docId: chunk) {
+          DocumentVersion documentVersion = documentService.newDocumentWithId(docId);
+          documentVersion.setValue("meeting_review_date__c",meetingDate);
+          documentVersions.add(documentVersion);
+        }
+
+        documentService.saveDocumentVersions(documentVersions);
+      }
     }
 
 }
@@ -0,0 +1,65 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+import java.math.BigDecimal;
+
+/**
+ * Provides parameter values for the Review Agenda App
+ * from the parameters record in object "VPROC Parameter Set".
+ *
+ * All parameters are optional.  If the parameter set does not exist, the defaults are used.
+ */
+
+@UserDefinedClassInfo
+public class AgendaAppParameters {
+
+    public static final String PARAMETER_SET_NAME = "AgendaApp";
+
+    private final BigDecimal deferredRecalcThreshold;
+    private final BigDecimal backgroundMeetingDateThreshold;
+    private final String deactivationActionName;
+
+    public AgendaAppParameters() {
+        this(ParameterSetRegistry.find(PARAMETER_SET_NAME));
+    }
+
+    public AgendaAppParameters(ParameterSetSnapshot parameters) {
+        if (parameters == null) {
+            this.deferredRecalcThreshold = BigDecimal.ZERO;
+            this.backgroundMeetingDateThreshold = BigDecimal.ZERO;
+            this.deactivationActionName = null;
+            return;
+        }
+        this.deferredRecalcThreshold = parameters.getNumber("deferredRecalcThreshold", BigDecimal.ZERO);
+        this.backgroundMeetingDateThreshold = parameters.getNumber("backgroundMeetingDateThreshold", BigDecimal.ZERO);
+        this.deactivationActionName = parameters.getString("deactivationActionName", null);
+    }
+
+    /**
+     * Return the number of Agenda Items at or above which an edit to an Agenda Item defers the
+     * recalculation of start/end times to Job AgendaItemRecalc.  Zero means never defer by size.
+     * @return
+     */
+    public BigDecimal deferredRecalcThreshold() {
+        return this.deferredRecalcThreshold;
+    }
+
+    /**
+     * Return the number of documents at or above which a change of Meeting Date is written to the
+     * documents by Job AgendaMeetingDateSync instead of while the user waits.  Zero means never.
+     * @return
+     */
+    public BigDecimal backgroundMeetingDateThreshold() {
+        return this.backgroundMeetingDateThreshold;
+    }
+
+    /**
+     * Return the name of the agenda__c lifecycle user action that Job AgendaDeactivation runs through the
+     * Vault API to deactivate Agendas in bulk, or null to update the status of each Agenda separately.
+     * @return
+     */
+    public String deactivationActionName() {
+        return this.deactivationActionName;
+    }
+}
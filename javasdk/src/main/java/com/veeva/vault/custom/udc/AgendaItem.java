@@ -68,6 +68,10 @@ public class AgendaItem {
       }
     }
 
+    public String getEndTime() {
+      return this.endTime;
+    }
+
     public void setEndTime(String endTime) {
       if (
         (this.endTime == null && endTime != null ) ||
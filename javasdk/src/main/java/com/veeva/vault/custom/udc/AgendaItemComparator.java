@@ -5,7 +5,8 @@ import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import java.math.BigDecimal;
 
 /**
- *  For sorting a list of Agenda Items by Order.
+ *  For sorting a list of Agenda Items by Order.  Items without an Order sort last, so that the
+ *  ordering stays consistent when items are added without one.
  */
 
 @UserDefinedClassInfo
@@ -16,10 +17,12 @@ class AgendaItemComparator implements java.util.Comparator<AgendaItem> {
         BigDecimal orderA = a.getOrder();
         BigDecimal orderB = b.getOrder();
 
-        if (orderA == null || orderB == null) {
-            return 0;
+        if (orderA == null) {
+            return orderB == null ? 0 : 1;
+        } else if (orderB == null) {
+            return -1;
         } else {
-            return orderA.intValue() - orderB.intValue();
+            return orderA.compareTo(orderB);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Request-scoped data shared by the phases of trigger AgendaItemTrigger and the classes it calls,
+ * so that each piece of data is read at most once per request:
+ *   - the users of the Vault (see VaultUsers), used to set the document info of Agenda Items
+ *   - the fields of each Agenda (agenda__c) involved: meeting time, defer_recalculation__c and the
+ *     rollups (see AgendaRollups), read with one query per chunk of Agendas
+ *
+ * The Agenda Items themselves are not kept.  The BEFORE phase does not read them, and each AFTER
+ * phase follows a save that has changed them, so a list kept from an earlier phase would always be
+ * stale; within a phase, the saves made by the recalculation do not reach it again (see guard()).
+ * Each recalculation therefore reads the items once (see AgendaItemsList), and the same list also
+ * gives the Agenda's end time to the rollups step.
+ *
+ * It also records whether the caller saving Agenda Items has already set their document info (see
+ * setDocumentInfoSet()), in which case the BEFORE phase of the trigger does not set it again.
+ *
+ * It also holds the reentrancy guard of the start/end time recalculation: the ids of the Agendas
+ * whose items are already being reordered or recalculated in the request (see guard()).  Saves made
+ * by that recalculation, or by a caller that recalculates the Agenda itself, do not trigger it again,
+ * while changes to other Agendas in the same request are still handled.  The mark is removed with
+ * release() once the recalculation is saved, so that later changes to the Agenda in the same request
+ * are handled again.
+ *
+ * The fields of an Agenda are dropped when its meeting time changes (see trigger AgendaAfter), so
+ * that later phases read current data.
+ */
+
+@UserDefinedClassInfo
+public class AgendaItemContext implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "agendaItemContext";
+
+    private VaultUsers vaultUsers = null;
+
+    // fields of the loaded agendas, keyed by agenda id
+    private Map<String, String> meetingTimes = VaultCollections.newMap();
+    private Map<String, Boolean> deferRecalculation = VaultCollections.newMap();
+    private Map<String, BigDecimal> itemCounts = VaultCollections.newMap();
+    private Map<String, BigDecimal> totalDurations = VaultCollections.newMap();
+    private Map<String, String> endTimes = VaultCollections.newMap();
+
+    // ids of the agendas whose items are being recalculated in this request
+    private Set<String> guardedAgendaIds = VaultCollections.newSet();
+
+    // true while a caller saves Agenda Items whose document info it has set itself
+    private boolean documentInfoSet = false;
+
+    /**
+     * Return the context of the current request, creating it if needed.
+     */
+    public static AgendaItemContext get() {
+      RequestContext requestContext = RequestContext.get();
+      AgendaItemContext context = requestContext.getValue(CONTEXT_KEY, AgendaItemContext.class);
+      if (context == null) {
+        context = new AgendaItemContext();
+        requestContext.setValue(CONTEXT_KEY, context);
+      }
+      return context;
+    }
+
+    /**
+     * Drop the cached fields of the Agendas, if a context exists in the current request.
+     * @param agendaIds - List<String>.  the Agenda ids
+     */
+    public static void agendasChanged(List<String> agendaIds) {
+      AgendaItemContext context = RequestContext.get().getValue(CONTEXT_KEY, AgendaItemContext.class);
+      if (context == null) {
+        return;
+      }
+      for (String agendaId : agendaIds) {
+        context.deferRecalculation.remove(agendaId);
+        context.meetingTimes.remove(agendaId);
+        context.itemCounts.remove(agendaId);
+        context.totalDurations.remove(agendaId);
+        context.endTimes.remove(agendaId);
+      }
+    }
+
+    /**
+     * Mark the Agenda as being recalculated in this request, so that trigger AgendaItemTrigger does
+     * not recalculate it again.
+     * @param agendaId - String.  the Agenda id
+     * @return boolean - true if the Agenda was not already marked, i.e. the caller should recalculate it
+     */
+    public boolean guard(String agendaId) {
+      return this.guardedAgendaIds.add(agendaId);
+    }
+
+    /**
+     * Mark the Agendas as being recalculated in this request.  See guard(agendaId).
+     * @param agendaIds - List<String>.  the Agenda ids
+     * @return List<String> - the Agendas that were not already marked, to be passed to release()
+     */
+    public List<String> guard(List<String> agendaIds) {
+      List<String> guarded = VaultCollections.newList();
+      for (String agendaId : agendaIds) {
+        if (this.guardedAgendaIds.add(agendaId)) {
+          guarded.add(agendaId);
+        }
+      }
+      return guarded;
+    }
+
+    /**
+     * Remove the mark set by guard(), once the caller has saved its changes to the Agenda, so that
+     * later changes to the Agenda in the same request are handled again.  Callers release only the
+     * Agendas that their own guard() call marked, in a finally block.
+     * @param agendaId - String.  the Agenda id
+     */
+    public void release(String agendaId) {
+      this.guardedAgendaIds.remove(agendaId);
+    }
+
+    /**
+     * Remove the marks of the Agendas.  See release(agendaId).
+     * @param agendaIds - List<String>.  the Agenda ids
+     */
+    public void release(List<String> agendaIds) {
+      for (String agendaId : agendaIds) {
+        this.guardedAgendaIds.remove(agendaId);
+      }
+    }
+
+    /**
+     * Set while saving Agenda Items whose document info the caller has already set (see
+     * AgendaApp.setAgendaItemsDocumentInfo), so that trigger AgendaItemTrigger does not read it
+     * again.  Callers reset it in a finally block.
+     * @param documentInfoSet - boolean
+     */
+    public void setDocumentInfoSet(boolean documentInfoSet) {
+      this.documentInfoSet = documentInfoSet;
+    }
+
+    public boolean isDocumentInfoSet() {
+      return this.documentInfoSet;
+    }
+
+    public VaultUsers getVaultUsers() {
+      if (this.vaultUsers == null) {
+        this.vaultUsers = new VaultUsers();
+      }
+      return this.vaultUsers;
+    }
+
+    /**
+     * Read the fields of those Agendas that are not already loaded.
+     * @param agendaIds - List<String>.  the Agenda ids
+     */
+    public void loadAgendas(List<String> agendaIds) {
+
+      List<String> missingIds = VaultCollections.newList();
+      for (String agendaId : agendaIds) {
+        if (agendaId != null && !this.deferRecalculation.containsKey(agendaId) && !missingIds.contains(agendaId)) {
+          missingIds.add(agendaId);
+        }
+      }
+
+      for (List<String> chunk : Util.partition(missingIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, meeting_time__c, defer_recalculation__c, item_count__c, total_duration__c, end_time__c from agenda__c" +
+            " where id contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          String agendaId = result.getValue("id", ValueType.STRING);
+          this.meetingTimes.put(agendaId, result.getValue("meeting_time__c", ValueType.STRING));
+          this.deferRecalculation.put(
+            agendaId, Boolean.TRUE.equals(result.getValue("defer_recalculation__c", ValueType.BOOLEAN))
+          );
+          this.itemCounts.put(agendaId, result.getValue("item_count__c", ValueType.NUMBER));
+          this.totalDurations.put(agendaId, result.getValue("total_duration__c", ValueType.NUMBER));
+          this.endTimes.put(agendaId, result.getValue("end_time__c", ValueType.STRING));
+        }
+      }
+    }
+
+    // Return true if the Agenda's fields are loaded, i.e. it exists.
+    public boolean hasAgenda(String agendaId) {
+      return this.deferRecalculation.containsKey(agendaId);
+    }
+
+    public String getMeetingTime(String agendaId) {
+      this.loadAgendas(VaultCollections.asList(agendaId));
+      return this.meetingTimes.get(agendaId);
+    }
+
+    /**
+     * Same as AgendaApp.isRecalcDeferred(itemCount, deferRecalculation), using the loaded fields of the Agenda.
+     */
+    public boolean isRecalcDeferred(String agendaId, int itemCount) {
+      this.loadAgendas(VaultCollections.asList(agendaId));
+      return AgendaApp.isRecalcDeferred(itemCount, this.deferRecalculation.get(agendaId));
+    }
+
+    public BigDecimal getItemCount(String agendaId) {
+      return this.itemCounts.get(agendaId);
+    }
+
+    public BigDecimal getTotalDuration(String agendaId) {
+      return this.totalDurations.get(agendaId);
+    }
+
+    public String getEndTime(String agendaId) {
+      return this.endTimes.get(agendaId);
+    }
+
+    // Record the rollups just saved for the Agenda.
+    public void setRollups(String agendaId, BigDecimal itemCount, BigDecimal totalDuration, String endTime) {
+      this.itemCounts.put(agendaId, itemCount);
+      this.totalDurations.put(agendaId, totalDuration);
+      this.endTimes.put(agendaId, endTime);
+    }
+}
@@ -11,15 +11,21 @@ import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 import java.math.BigDecimal;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  *  This class manages records of Object "Agenda Item" (agenda_item__c).
  *
  *  Public methods include:
+ *    - forAgendas
  *    - shiftDownAfter
  *    - shiftUpBefore
  *    - compressAgendaItemOrdering
  *    - updateStartEndTimes
+ *    - getEndTime
+ *    - getScheduledDuration
+ *    - size
+ *    - getChangedRecords
  *    - saveChanged Records
  *
  *  Time manipulation logic in this class depend on a time string that's in a valid
@@ -63,17 +69,53 @@ public class AgendaItemsList {
       Iterator<QueryExecutionResult> iterator = response.streamResults().iterator();
 
       while (iterator.hasNext()) {
-        QueryExecutionResult result = iterator.next();
-        this.agendaItems.add(
-          new AgendaItem(
-            result.getValue("id", ValueType.STRING),
-            result.getValue("order__c", ValueType.NUMBER),
-            result.getValue("duration__c", ValueType.NUMBER),
-            result.getValue("start_time__c", ValueType.STRING),
-            result.getValue("end_time__c", ValueType.STRING)
-          )
+        this.agendaItems.add(newAgendaItem(iterator.next()));
+      }
+    }
+
+    private AgendaItemsList() {
+      this.agendaItems = VaultCollections.newList();
+    }
+
+    /**
+     * Load the Agenda Items of several Agendas with one query per AgendaApp.QUERY_CHUNK_SIZE Agendas.
+     * Every Agenda id has an entry in the returned map, keyed by Agenda id, even if it has no items.
+     *
+     * @param agendaIds - List<String>.  The Agenda ids.
+     */
+    public static Map<String, AgendaItemsList> forAgendas(List<String> agendaIds) {
+
+      Map<String, AgendaItemsList> lists = VaultCollections.newMap();
+      for (String agendaId : agendaIds) {
+        lists.put(agendaId, new AgendaItemsList());
+      }
+
+      for (List<String> chunk : Util.partition(agendaIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+        // the 'order by' clause is crucial to the operation of methods in this class
+        QueryExecutionResponse response = QueryUtil.query(
+          "select id, agenda__c, order__c, duration__c, start_time__c, end_time__c from agenda_item__c" +
+            " where agenda__c contains " + Util.vqlContains(chunk) +
+            " order by order__c asc"
         );
+        Iterator<QueryExecutionResult> iterator = response.streamResults().iterator();
+
+        while (iterator.hasNext()) {
+          QueryExecutionResult result = iterator.next();
+          lists.get(result.getValue("agenda__c", ValueType.STRING)).agendaItems.add(newAgendaItem(result));
+        }
       }
+
+      return lists;
+    }
+
+    private static AgendaItem newAgendaItem(QueryExecutionResult result) {
+      return new AgendaItem(
+        result.getValue("id", ValueType.STRING),
+        result.getValue("order__c", ValueType.NUMBER),
+        result.getValue("duration__c", ValueType.NUMBER),
+        result.getValue("start_time__c", ValueType.STRING),
+        result.getValue("end_time__c", ValueType.STRING)
+      );
     }
 
     /**
@@ -111,6 +153,9 @@ public class AgendaItemsList {
         }
       }
 
+      // keep the list in order, for the next shift
+      this.agendaItems.sort(new AgendaItemComparator());
+
     }  // end shiftDownAfter()
 
   /**
@@ -146,9 +191,12 @@ public class AgendaItemsList {
       }
     }
 
+    // keep the list in order, for the next shift
+    this.agendaItems.sort(new AgendaItemComparator());
+
   }  // end shiftUpBefore()
 
-  // Make the order numbers contiguous -- remove gaps between numbers.
+  // Make the order numbers contiguous -- remove gaps between numbers, and renumber duplicates.
   public void compressAgendaItemOrdering() {
 
     Iterator<AgendaItem> iter = this.agendaItems.iterator();
@@ -161,7 +209,7 @@ public class AgendaItemsList {
       if (bdOrder == null) {
         continue;
       }
-      if (bdOrder.intValue() > order) {
+      if (bdOrder.intValue() != order) {
         item.setOrder(order);
       }
       order++;
@@ -224,7 +272,46 @@ public class AgendaItemsList {
       return;
     }
 
-    public void saveChangedRecords() {
+  /**
+   * Return the end time of the schedule: the end time of the last ordered item that has one.  As set
+   * by updateStartEndTimes, the schedule stops at the first ordered item without a duration, so this
+   * is blank if the Agenda has no meeting time or its first ordered item has no duration.
+   */
+    public String getEndTime() {
+      String endTime = null;
+      Iterator<AgendaItem> iter = this.agendaItems.iterator();
+
+      while (iter.hasNext()) {
+        AgendaItem item = iter.next();
+        if (item.getOrder() != null && item.getEndTime() != null) {
+          endTime = item.getEndTime();
+        }
+      }
+      return endTime;
+    }
+
+    // Return the total duration, in minutes, of the ordered items, i.e. those on the schedule.
+    public int getScheduledDuration() {
+      int duration = 0;
+      Iterator<AgendaItem> iter = this.agendaItems.iterator();
+
+      while (iter.hasNext()) {
+        AgendaItem item = iter.next();
+        if (item.getOrder() != null && item.getDuration() != null) {
+          duration += item.getDuration().intValue();
+        }
+      }
+      return duration;
+    }
+
+    // Return the number of Agenda Items in the list.
+    public int size() {
+      return this.agendaItems.size();
+    }
+
+    // Return the records of the items that have changed, so that changes to several lists can be
+    // saved together.
+    public List<Record> getChangedRecords() {
       List<Record> records = VaultCollections.newList();
       Iterator<AgendaItem> iter  = this.agendaItems.iterator();
 
@@ -234,6 +321,11 @@ public class AgendaItemsList {
           records.add(item.getRecord());
         }
       }
+      return records;
+    }
+
+    public void saveChangedRecords() {
+      List<Record> records = this.getChangedRecords();
       if (records.size() > 0) {
         Util.batchSaveRecords(records);
       }
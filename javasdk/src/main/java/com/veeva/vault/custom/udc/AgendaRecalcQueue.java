@@ -0,0 +1,208 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.job.JobParameters;
+import com.veeva.vault.sdk.api.job.JobService;
+import com.veeva.vault.sdk.api.query.QueryExecutionResponse;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Coalescing queue of requests to recalculate Agenda Item start/end times, kept in object
+ * "Agenda Recalc Request" (agenda_recalc_request__c).  Each record is named with the id of the
+ * Agenda (agenda__c) to recalculate, except the "job started" marker (see below).
+ *
+ * request() adds an Agenda to the queue and starts Job AgendaItemRecalc only when no job is waiting
+ * to handle the queue.  A waiting job is recorded by the marker record, named JOB_STARTED_MARKER,
+ * which request() creates when it starts the job.  Requests made before the job starts running join
+ * the queue, at most one record per Agenda, and are all handled by that one job run, which claims
+ * them with claim().  A burst of requests therefore produces one recalculation per Agenda rather than
+ * one job per request.
+ *
+ * The coalescing is best-effort: the job is started immediately, since Job runs cannot be given a
+ * delayed start, so only requests made before the job claims the queue are coalesced.  Requests that
+ * keep arriving after the claim are handled by one further run per claim, not one run per request.
+ *
+ * claim() first deletes the marker, and then claims only the requests created before that moment.
+ * A request that still saw the marker was therefore queued before the claim, and one queued after the
+ * claim saw no marker and started a job of its own, so that no request is left in the queue without
+ * a job.  The job also calls restartIfPending() before it exits, as a safety net.
+ *
+ * If the marker is more than STALE_MINUTES old, the job that should have claimed the queue is assumed
+ * lost, and request() starts a new one.
+ */
+
+@UserDefinedClassInfo
+public class AgendaRecalcQueue {
+
+    private static final String OBJECT_NAME = "agenda_recalc_request__c";
+
+    public static final String JOB_NAME = "agenda_item_recalc__c";
+
+    // name of the record that marks a started job that has not yet claimed the queue
+    private static final String JOB_STARTED_MARKER = "job_started";
+
+    // age at which a started job is assumed to have been lost
+    private static final long STALE_MINUTES = 15;
+
+    /**
+     * Queue a recalculation of the Agenda, and start Job AgendaItemRecalc if no job is already
+     * waiting to handle the queue.
+     * @param agendaId - String.  id of the Agenda
+     * @return boolean - true if a job was started, false if the request was coalesced into a waiting job
+     */
+    public static boolean request(String agendaId) {
+      return request(VaultCollections.asList(agendaId));
+    }
+
+    /**
+     * Queue a recalculation of each of the Agendas, and start Job AgendaItemRecalc if no job is already
+     * waiting to handle the queue.
+     * @param agendaIds - List<String>.  ids of the Agendas
+     * @return boolean - true if a job was started, false if the requests were coalesced into a waiting job
+     */
+    public static boolean request(List<String> agendaIds) {
+
+      if (agendaIds.isEmpty()) {
+        return false;
+      }
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+
+      List<String> queuedIds = VaultCollections.newList();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select name__v from " + OBJECT_NAME + " where name__v != '" + JOB_STARTED_MARKER + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        queuedIds.add(iter.next().getValue("name__v", ValueType.STRING));
+      }
+
+      List<Record> records = VaultCollections.newList();
+      for (String agendaId : agendaIds) {
+        if (!queuedIds.contains(agendaId)) {
+          Record record = recordService.newRecord(OBJECT_NAME);
+          record.setValue("name__v", agendaId);
+          record.setValue("agenda__c", agendaId);
+          records.add(record);
+          queuedIds.add(agendaId);
+        }
+      }
+      if (!records.isEmpty()) {
+        Util.batchSaveRecords(records);
+      }
+
+      // the marker is read after the requests are saved, see claim()
+      return startJobIfNotWaiting();
+    }
+
+    /**
+     * Start Job AgendaItemRecalc if requests are still queued and no job is waiting to handle them.
+     * Called by the job before it exits.
+     * @return boolean - true if a job was started
+     */
+    public static boolean restartIfPending() {
+
+      QueryExecutionResponse response = QueryUtil.query(
+        "select id from " + OBJECT_NAME + " where name__v != '" + JOB_STARTED_MARKER + "'"
+      );
+      if (response.getResultCount() == 0) {
+        return false;
+      }
+
+      return startJobIfNotWaiting();
+    }
+
+    /**
+     * Claim the queued requests: delete the "job started" marker, then delete the requests created
+     * before that moment and return the ids of the Agendas they were for.  Requests created later
+     * are left for the job started by their request() call.
+     * @return List<String> - Agenda ids
+     */
+    public static List<String> claim() {
+
+      deleteRecords(findMarkerIds());
+      ZonedDateTime claimedAt = ZonedDateTime.now();
+
+      List<String> agendaIds = VaultCollections.newList();
+      List<String> recordIds = VaultCollections.newList();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id, name__v, created_date__v from " + OBJECT_NAME + " where name__v != '" + JOB_STARTED_MARKER + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        QueryExecutionResult result = iter.next();
+        ZonedDateTime createdDate = result.getValue("created_date__v", ValueType.DATETIME);
+        if (createdDate.isBefore(claimedAt)) {
+          agendaIds.add(result.getValue("name__v", ValueType.STRING));
+          recordIds.add(result.getValue("id", ValueType.STRING));
+        }
+      }
+
+      deleteRecords(recordIds);
+
+      return agendaIds;
+    }
+
+    // Start the job unless the marker shows that one is waiting, replacing a stale marker.
+    private static boolean startJobIfNotWaiting() {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+
+      List<String> staleMarkerIds = VaultCollections.newList();
+      ZonedDateTime staleBefore = ZonedDateTime.now().minusMinutes(STALE_MINUTES);
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id, created_date__v from " + OBJECT_NAME + " where name__v = '" + JOB_STARTED_MARKER + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        QueryExecutionResult result = iter.next();
+        ZonedDateTime createdDate = result.getValue("created_date__v", ValueType.DATETIME);
+        if (createdDate.isAfter(staleBefore)) {
+          return false;
+        }
+        staleMarkerIds.add(result.getValue("id", ValueType.STRING));
+      }
+      deleteRecords(staleMarkerIds);
+
+      Record marker = recordService.newRecord(OBJECT_NAME);
+      marker.setValue("name__v", JOB_STARTED_MARKER);
+      Util.saveRecord(marker);
+
+      JobService jobService = ServiceLocator.locate(JobService.class);
+      JobParameters jobParameters = jobService.newJobParameters(JOB_NAME);
+      jobService.runJob(jobParameters);
+
+      return true;
+    }
+
+    private static List<String> findMarkerIds() {
+      List<String> markerIds = VaultCollections.newList();
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id from " + OBJECT_NAME + " where name__v = '" + JOB_STARTED_MARKER + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        markerIds.add(iter.next().getValue("id", ValueType.STRING));
+      }
+      return markerIds;
+    }
+
+    private static void deleteRecords(List<String> recordIds) {
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      List<Record> records = VaultCollections.newList();
+      for (String recordId : recordIds) {
+        records.add(recordService.newRecordWithId(OBJECT_NAME, recordId));
+      }
+      for (List<Record> recordsChunk : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchDeleteRecords(recordsChunk);
+      }
+    }
+}
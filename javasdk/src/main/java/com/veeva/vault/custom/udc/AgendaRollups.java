@@ -0,0 +1,219 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordChange;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the rollup fields of the Agenda (agenda__c), so that they can be read from the Agenda
+ * record instead of computed from its Agenda Items (agenda_item__c):
+ *   - item_count__c: the number of Agenda Items
+ *   - total_duration__c: the total Duration (duration__c), in minutes, of the ordered Agenda Items,
+ *     i.e. those on the schedule
+ *   - end_time__c: the end time of the schedule, i.e. the End Time of the last Agenda Item that has
+ *     one (see AgendaItemsList.getEndTime).  Like the items' start/end times, the schedule stops at
+ *     the first ordered Agenda Item without a Duration, and is blank if the Agenda has no meeting time.
+ *
+ * The count and duration are maintained incrementally by trigger AgendaItemTrigger with
+ * applyChanges(), which adds the difference made by each Agenda Item change.  The end time is set
+ * wherever the items' start/end times are recalculated: by the same applyChanges() call for the
+ * Agendas recalculated by the trigger, and with saveEndTimes() by the other callers.  rebuild()
+ * recomputes all three from scratch, and is used by Job AgendaRollupReconciliation to correct any
+ * drift.
+ */
+
+@UserDefinedClassInfo
+public class AgendaRollups {
+
+    /**
+     * Apply the Agenda Item changes of a trigger to the rollups of their Agendas, and set the end
+     * time of the Agendas whose items were recalculated by the trigger.  The Agendas are saved together.
+     * @param recordEvent - RecordEvent.  the AFTER_INSERT, AFTER_UPDATE or AFTER_DELETE event
+     * @param recordChanges - List<RecordChange>.  the Agenda Item changes
+     * @param endTimes - Map<String, String>.  the end times of the recalculated Agendas, keyed by agenda id
+     */
+    public static void applyChanges(RecordEvent recordEvent, List<RecordChange> recordChanges, Map<String, String> endTimes) {
+
+      // changes to the item count and total duration, keyed by agenda id
+      Map<String, Integer> countDeltas = VaultCollections.newMap();
+      Map<String, Integer> durationDeltas = VaultCollections.newMap();
+
+      for (RecordChange recordChange : recordChanges) {
+        if (recordEvent != RecordEvent.AFTER_INSERT) {
+          addDelta(countDeltas, durationDeltas, recordChange.getOld(), -1);
+        }
+        if (recordEvent != RecordEvent.AFTER_DELETE) {
+          addDelta(countDeltas, durationDeltas, recordChange.getNew(), 1);
+        }
+      }
+
+      List<String> agendaIds = Util.toList(countDeltas.keySet());
+      for (String agendaId : endTimes.keySet()) {
+        if (!agendaIds.contains(agendaId)) {
+          agendaIds.add(agendaId);
+        }
+      }
+
+      // the agendas' current rollups are shared with the other phases of the request
+      AgendaItemContext context = AgendaItemContext.get();
+      context.loadAgendas(agendaIds);
+
+      List<Record> records = VaultCollections.newList();
+
+      for (String agendaId : agendaIds) {
+        if (!context.hasAgenda(agendaId)) {
+          continue;  // the agenda itself is being deleted
+        }
+        int currentCount = intValue(context.getItemCount(agendaId));
+        int currentDuration = intValue(context.getTotalDuration(agendaId));
+        String currentEndTime = context.getEndTime(agendaId);
+
+        int count = currentCount + (countDeltas.containsKey(agendaId) ? countDeltas.get(agendaId) : 0);
+        int duration = currentDuration + (durationDeltas.containsKey(agendaId) ? durationDeltas.get(agendaId) : 0);
+        String endTime = endTimes.containsKey(agendaId) ? endTimes.get(agendaId) : currentEndTime;
+
+        if (count != currentCount || duration != currentDuration || !sameTime(endTime, currentEndTime)) {
+          records.add(rollupRecord(agendaId, count, duration, endTime));
+        }
+      }
+
+      for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(batch);
+      }
+
+      for (Record record : records) {
+        context.setRollups(
+          record.getValue("id", ValueType.STRING),
+          record.getValue("item_count__c", ValueType.NUMBER),
+          record.getValue("total_duration__c", ValueType.NUMBER),
+          record.getValue("end_time__c", ValueType.STRING)
+        );
+      }
+    }
+
+    /**
+     * Save the end time of Agendas whose items' start/end times were recalculated outside trigger
+     * AgendaItemTrigger, e.g. by a job or an action that guards the Agendas.
+     * @param endTimes - Map<String, String>.  the end times (see AgendaItemsList.getEndTime), keyed by agenda id
+     */
+    public static void saveEndTimes(Map<String, String> endTimes) {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      List<Record> records = VaultCollections.newList();
+
+      for (String agendaId : endTimes.keySet()) {
+        Record record = recordService.newRecordWithId("agenda__c", agendaId);
+        record.setValue("end_time__c", endTimes.get(agendaId));
+        records.add(record);
+      }
+
+      for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(batch);
+      }
+
+      // later phases of the request read the saved values
+      AgendaItemContext.agendasChanged(Util.toList(endTimes.keySet()));
+    }
+
+    /**
+     * Recompute the rollups of the Agendas from their Agenda Items, and save those that differ.  The
+     * end time is that of the items' schedule as recalculated from the meeting time; the items
+     * themselves are not changed.
+     * @param agendaIds - List<String>.  the Agenda ids
+     * @return int - the number of Agendas whose rollups were corrected
+     */
+    public static int rebuild(List<String> agendaIds) {
+
+      List<Record> records = VaultCollections.newList();
+
+      for (List<String> chunk : Util.partition(agendaIds, AgendaApp.QUERY_CHUNK_SIZE)) {
+
+        Map<String, AgendaItemsList> agendaItemsLists = AgendaItemsList.forAgendas(chunk);
+
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, meeting_time__c, item_count__c, total_duration__c, end_time__c from agenda__c" +
+            " where id contains " + Util.vqlContains(chunk)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          String agendaId = result.getValue("id", ValueType.STRING);
+
+          AgendaItemsList agendaItems = agendaItemsLists.get(agendaId);
+          agendaItems.updateStartEndTimes(result.getValue("meeting_time__c", ValueType.STRING));
+          int count = agendaItems.size();
+          int duration = agendaItems.getScheduledDuration();
+          String endTime = agendaItems.getEndTime();
+
+          BigDecimal currentCount = result.getValue("item_count__c", ValueType.NUMBER);
+          BigDecimal currentDuration = result.getValue("total_duration__c", ValueType.NUMBER);
+          String currentEndTime = result.getValue("end_time__c", ValueType.STRING);
+
+          boolean same =
+            currentCount != null && currentCount.intValue() == count &&
+            currentDuration != null && currentDuration.intValue() == duration &&
+            sameTime(endTime, currentEndTime);
+
+          if (!same) {
+            records.add(rollupRecord(agendaId, count, duration, endTime));
+          }
+        }
+      }
+
+      for (List<Record> batch : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(batch);
+      }
+
+      return records.size();
+    }
+
+    private static void addDelta(Map<String, Integer> countDeltas, Map<String, Integer> durationDeltas, Record record, int sign) {
+      String agendaId = record.getValue("agenda__c", ValueType.STRING);
+      if (agendaId == null) {
+        return;
+      }
+      if (!countDeltas.containsKey(agendaId)) {
+        countDeltas.put(agendaId, 0);
+        durationDeltas.put(agendaId, 0);
+      }
+      int duration = scheduledDuration(
+        record.getValue("order__c", ValueType.NUMBER),
+        record.getValue("duration__c", ValueType.NUMBER)
+      );
+      countDeltas.put(agendaId, countDeltas.get(agendaId) + sign);
+      durationDeltas.put(agendaId, durationDeltas.get(agendaId) + sign * duration);
+    }
+
+    // the duration counted in total_duration__c for an item: its duration, if it is on the schedule
+    private static int scheduledDuration(BigDecimal order, BigDecimal duration) {
+      return (order == null || duration == null) ? 0 : duration.intValue();
+    }
+
+    private static Record rollupRecord(String agendaId, int count, int duration, String endTime) {
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      Record record = recordService.newRecordWithId("agenda__c", agendaId);
+      record.setValue("item_count__c", new BigDecimal(count));
+      record.setValue("total_duration__c", new BigDecimal(duration));
+      record.setValue("end_time__c", endTime);
+      return record;
+    }
+
+    private static boolean sameTime(String time, String otherTime) {
+      return time == null ? otherTime == null : time.equals(otherTime);
+    }
+
+    private static int intValue(BigDecimal value) {
+      return value == null ? 0 : value.intValue();
+    }
+}
@@ -0,0 +1,293 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.json.JsonArray;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains the expiration calendar: one record per Material in object "VPROC Expiration Calendar"
+ * (vproc_expiration_calendar__c), so that Job ExpirationUpcomingTasks can find due Materials by
+ * querying a small index instead of scanning documents.
+ *
+ * Each calendar record is named with the document id, and holds:
+ *   - document_version_id__c, document_number__c: the latest version of the document
+ *   - expiration_date__c: the document's expiration date
+ *   - lifecycle_state__c: the label of the document's lifecycle state
+ *   - steady_state__c: true if the document is in a steady state (a start candidate)
+ *   - approved__c: true if the document is Approved for Distribution (a cancel candidate)
+ *   - pending_expiration_task_sent__c: copied from the document; set by the job when it starts a workflow
+ *   - workflow_active__c: true if the document may have an active Expiration Pending workflow.  It is
+ *     read from the document's active workflows each time the record is refreshed (and set to true if
+ *     they cannot be read), so that workflows started outside the job are found by cancel discovery.
+ *     The job sets it when it starts a workflow, and clears it when it finds no active workflow.
+ *
+ * Records are refreshed by document action UpdateExpirationCalendar, as a lifecycle entry action and
+ * on demand as a user action.  Job ExpirationCalendarReconciliation refreshes the records of documents
+ * modified since its last run, which picks up documents edited without a state change (e.g. a new
+ * expiration date), and on request rebuilds the whole calendar.
+ */
+
+@UserDefinedClassInfo
+public class ExpirationCalendar {
+
+    public static final String OBJECT_NAME = "vproc_expiration_calendar__c";
+
+    // document types that are subject to the Expiration Pending workflow
+    public static final List<String> DOCUMENT_TYPES =
+      VaultCollections.asList("jobs__c", "nprc__c", "par__c", "endoaesthetics__c");
+
+    // maximum number of document ids in a single 'contains' filter
+    public static final int QUERY_CHUNK_SIZE = 200;
+
+    /**
+     * Return the ids of the documents whose calendar records may be out of date: the documents of
+     * DOCUMENT_TYPES whose latest version was modified on or after modifiedSince or, if modifiedSince
+     * is null, all documents of DOCUMENT_TYPES plus all documents that have a calendar record, so that
+     * records of documents that no longer qualify are removed by refresh().
+     * @param modifiedSince - LocalDate.  start of the modification window, or null for all documents
+     * @return List<String> - document ids
+     */
+    public static List<String> findDocIds(LocalDate modifiedSince) {
+
+      StringBuilder sbQuery = new StringBuilder()
+        .append("select id from documents")
+        .append(" where toName(type__v) contains ").append(Util.vqlContains(DOCUMENT_TYPES));
+      if (modifiedSince != null) {
+        sbQuery
+          .append("   and version_modified_date__v >= ")
+            .append("'").append(modifiedSince.toString()).append("T00:00:00.000Z'");
+      }
+
+      Set<String> docIds = queryIds(sbQuery.toString());
+
+      if (modifiedSince == null) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query("select name__v from " + OBJECT_NAME).streamResults().iterator();
+        while (iter.hasNext()) {
+          docIds.add(iter.next().getValue("name__v", ValueType.STRING));
+        }
+      }
+
+      return Util.toList(docIds);
+    }
+
+    /**
+     * Bring the calendar records of the given documents up to date with the documents.  Records are
+     * created for documents of DOCUMENT_TYPES, and deleted for documents that no longer qualify.
+     * @param docIds - List<String>.  document ids
+     */
+    public static void refresh(List<String> docIds) {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+
+      List<Record> recordsToSave = VaultCollections.newList();
+      List<Record> recordsToDelete = VaultCollections.newList();
+
+      for (List<String> docIdsChunk : Util.partition(docIds, QUERY_CHUNK_SIZE)) {
+
+        String idFilter = " where id contains " + Util.vqlContainsNumbers(docIdsChunk);
+
+        Set<String> steadyIds = queryIds(
+          "select id from documents" + idFilter + " and status__v = steadyState()"
+        );
+        Set<String> approvedIds = queryIds(
+          "select id from documents" + idFilter +
+          "   and toName(lifecycle__v) = 'job_processing__c'" +
+          "   and toName(status__v) = 'approved_for_distribution__c'"
+        );
+        Map<String, String> recordIds = findRecordIds(docIdsChunk);
+        Set<String> activeWorkflowIds = findActiveWorkflowDocIds(docIdsChunk);
+
+        Set<String> foundIds = VaultCollections.newSet();
+
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, version_id, document_number__v, expiration_date__c, status__v, pending_expiration_task_sent__c" +
+          "  from documents" + idFilter +
+          "   and toName(type__v) contains " + Util.vqlContains(DOCUMENT_TYPES)
+        ).streamResults().iterator();
+
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          String docId = result.getValue("id", ValueType.STRING);
+          foundIds.add(docId);
+
+          Record record;
+          if (recordIds.containsKey(docId)) {
+            record = recordService.newRecordWithId(OBJECT_NAME, recordIds.get(docId));
+          } else {
+            record = recordService.newRecord(OBJECT_NAME);
+            record.setValue("name__v", docId);
+          }
+          record.setValue("document_version_id__c", result.getValue("version_id", ValueType.STRING));
+          record.setValue("document_number__c", result.getValue("document_number__v", ValueType.STRING));
+          record.setValue("expiration_date__c", result.getValue("expiration_date__c", ValueType.DATE));
+          record.setValue("lifecycle_state__c", result.getValue("status__v", ValueType.STRING));
+          record.setValue("steady_state__c", steadyIds.contains(docId));
+          record.setValue("approved__c", approvedIds.contains(docId));
+          record.setValue("workflow_active__c", activeWorkflowIds == null || activeWorkflowIds.contains(docId));
+          record.setValue(
+            "pending_expiration_task_sent__c",
+            Boolean.TRUE.equals(result.getValue("pending_expiration_task_sent__c", ValueType.BOOLEAN))
+          );
+          recordsToSave.add(record);
+        }
+
+        for (String docId : recordIds.keySet()) {
+          if (!foundIds.contains(docId)) {
+            recordsToDelete.add(recordService.newRecordWithId(OBJECT_NAME, recordIds.get(docId)));
+          }
+        }
+      }
+
+      for (List<Record> recordsChunk : Util.partition(recordsToSave, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(recordsChunk);
+      }
+      for (List<Record> recordsChunk : Util.partition(recordsToDelete, Util.RECORD_BATCH_SIZE)) {
+        Util.batchDeleteRecords(recordsChunk);
+      }
+    }
+
+    /**
+     * Record that Expiration Pending workflows were started for the given documents.
+     * @param docIds - List<String>.  document ids
+     */
+    public static void markStarted(List<String> docIds) {
+      update(docIds, true, true);
+    }
+
+    /**
+     * Record that the given documents have no active Expiration Pending workflow.
+     * @param docIds - List<String>.  document ids
+     */
+    public static void markInactive(List<String> docIds) {
+      update(docIds, null, false);
+    }
+
+    /**
+     * Return the VQL query for calendar records that are candidates for a new workflow, with an
+     * expiration date between dateFrom and dateTo.  If lastExpirationDate and lastRunDate are not null,
+     * also include records with an expiration date between bufferFrom and lastExpirationDate that were
+     * modified since lastRunDate.  Selects document_version_id__c, document_number__c, expiration_date__c.
+     */
+    public static String startCandidatesQuery(
+      LocalDate dateFrom,
+      LocalDate dateTo,
+      LocalDate bufferFrom,
+      LocalDate lastExpirationDate,
+      LocalDate lastRunDate)
+    {
+      StringBuilder sbQuery = new StringBuilder()
+        .append("select document_version_id__c, document_number__c, expiration_date__c")
+        .append("  from ").append(OBJECT_NAME)
+        .append(" where steady_state__c = true")
+        .append("   and pending_expiration_task_sent__c != true")
+        .append("   and (expiration_date__c between '").append(dateFrom.toString())
+          .append("' and '").append(dateTo.toString()).append("'");
+
+      if (lastExpirationDate != null && lastRunDate != null) {
+        sbQuery
+          .append("     or (expiration_date__c between '").append(bufferFrom.toString())
+            .append("' and '").append(lastExpirationDate.toString()).append("'")
+          .append("         and modified_date__v >= '").append(lastRunDate.toString()).append("T00:00:00.000Z')");
+      }
+
+      return sbQuery.append(")").toString();
+    }
+
+    /**
+     * Return the VQL query for calendar records that are candidates for cancelling a workflow: approved
+     * documents that may have an active workflow, with an expiration date on or before workflowKillDate.
+     * Selects name__v (the document id), document_number__c, expiration_date__c.
+     */
+    public static String cancelCandidatesQuery(LocalDate workflowKillDate) {
+      return
+        "select name__v, document_number__c, expiration_date__c" +
+        "  from " + OBJECT_NAME +
+        " where approved__c = true" +
+        "   and workflow_active__c = true" +
+        "   and expiration_date__c <= '" + workflowKillDate.toString() + "'";
+    }
+
+    private static void update(List<String> docIds, Boolean taskSent, boolean workflowActive) {
+
+      if (docIds.isEmpty()) {
+        return;
+      }
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      List<Record> records = VaultCollections.newList();
+
+      for (List<String> docIdsChunk : Util.partition(docIds, QUERY_CHUNK_SIZE)) {
+        Map<String, String> recordIds = findRecordIds(docIdsChunk);
+        for (String recordId : recordIds.values()) {
+          Record record = recordService.newRecordWithId(OBJECT_NAME, recordId);
+          if (taskSent != null) {
+            record.setValue("pending_expiration_task_sent__c", taskSent);
+          }
+          record.setValue("workflow_active__c", workflowActive);
+          records.add(record);
+        }
+      }
+
+      for (List<Record> recordsChunk : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(recordsChunk);
+      }
+    }
+
+    // calendar record ids keyed by document id, for up to QUERY_CHUNK_SIZE document ids
+    private static Map<String, String> findRecordIds(List<String> docIds) {
+      Map<String, String> recordIds = VaultCollections.newMap();
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id, name__v from " + OBJECT_NAME + " where name__v contains " + Util.vqlContains(docIds)
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        QueryExecutionResult result = iter.next();
+        recordIds.put(result.getValue("name__v", ValueType.STRING), result.getValue("id", ValueType.STRING));
+      }
+      return recordIds;
+    }
+
+    // ids of the documents with an active Expiration Pending workflow, for up to QUERY_CHUNK_SIZE
+    // document ids, or null if the workflows cannot be read.  QueryService does not support queries on
+    // the workflows object, so the query is made through the Vault API.
+    private static Set<String> findActiveWorkflowDocIds(List<String> docIds) {
+      VAPI vapi = new VAPI("local_connection__c");
+      JsonArray data = vapi.executeQuery(
+        "select workflow_document_id__v" +
+        "  from workflows" +
+        " where workflow_name__v = 'Expiration Pending' and workflow_status__v = 'Active'" +
+        "   and workflow_document_id__v contains " + Util.vqlContainsNumbers(docIds)
+      );
+      if (vapi.failed()) {
+        return null;
+      }
+
+      Set<String> ids = VaultCollections.newSet();
+      for (int i=0; i<data.getSize(); i++) {
+        JsonObject jsonObject = data.getValue(i, JsonValueType.OBJECT);
+        ids.add(jsonObject.getValue("workflow_document_id__v", JsonValueType.NUMBER).toString());
+      }
+      return ids;
+    }
+
+    private static Set<String> queryIds(String query) {
+      Set<String> ids = VaultCollections.newSet();
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(query).streamResults().iterator();
+      while (iter.hasNext()) {
+        ids.add(iter.next().getValue("id", ValueType.STRING));
+      }
+      return ids;
+    }
+}
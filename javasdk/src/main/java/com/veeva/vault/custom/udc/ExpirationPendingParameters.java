@@ -1,23 +1,52 @@
 package com.veeva.vault.custom.udc;
 
+import com.veeva.vault.sdk.api.core.RollbackException;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
-import com.veeva.vault.sdk.api.json.JsonObject;
-import com.veeva.vault.sdk.api.json.JsonValueType;
 
 import java.math.BigDecimal;
 
 /**
  * Provides parameter values for the ExpirationPending application
  * from the parameters record in object "VPROC Parameter Set".
+ *
+ * All parameters are read and validated when the object is created, from the snapshot held by
+ * ParameterSetRegistry.  A missing or mistyped parameter throws a RollbackException.
  */
 
 @UserDefinedClassInfo
 public class ExpirationPendingParameters {
 
-    private JsonObject parametersJson;
+    public static final String PARAMETER_SET_NAME = "ExpirationPendingWorkflow";
+
+    // default number of work items in each task of Job ExpirationUpcomingTasks
+    public static final int DEFAULT_TASK_SIZE = 25;
+
+    private final BigDecimal workflowStartDays;
+    private final BigDecimal taskDueDays;
+    private final BigDecimal workflowKillDays;
+    private final BigDecimal taskSize;
+    private final boolean dryRun;
+    private final boolean useExpirationCalendar;
+    private final BigDecimal startRestCallBudget;
+    private final BigDecimal startWindowDays;
+    private final int logLevel;
+    private final BigDecimal maxLogBodyLength;
 
     public ExpirationPendingParameters() {
-        this.parametersJson = Util.getParameters("ExpirationPendingWorkflow");
+        this(ParameterSetRegistry.get(PARAMETER_SET_NAME));
+    }
+
+    public ExpirationPendingParameters(ParameterSetSnapshot parameters) {
+        this.workflowStartDays = parameters.getNumber("workflowStartDays");
+        this.taskDueDays = parameters.getNumber("taskDueDays");
+        this.workflowKillDays = parameters.getNumber("workflowKillDays");
+        this.taskSize = parameters.getNumber("taskSize", new BigDecimal(DEFAULT_TASK_SIZE));
+        this.dryRun = parameters.getBoolean("dryRun", false);
+        this.useExpirationCalendar = parameters.getBoolean("useExpirationCalendar", false);
+        this.startRestCallBudget = parameters.getNumber("startRestCallBudget", BigDecimal.ZERO);
+        this.startWindowDays = parameters.getNumber("startWindowDays", BigDecimal.ONE);
+        this.logLevel = toLogLevel(parameters.getString("logLevel", "INFO"));
+        this.maxLogBodyLength = parameters.getNumber("maxLogBodyLength", new BigDecimal(Logger.DEFAULT_MAX_LENGTH));
     }
 
     /**
@@ -26,7 +55,7 @@ public class ExpirationPendingParameters {
      * @return
      */
     public BigDecimal workflowStartDays() {
-        return this.parametersJson.getValue("workflowStartDays", JsonValueType.NUMBER);
+        return this.workflowStartDays;
     }
 
     /**
@@ -35,7 +64,7 @@ public class ExpirationPendingParameters {
      * @return
      */
     public BigDecimal taskDueDays() {
-        return this.parametersJson.getValue("taskDueDays", JsonValueType.NUMBER);
+        return this.taskDueDays;
     }
 
     /**
@@ -44,6 +73,87 @@ public class ExpirationPendingParameters {
      * @return
      */
     public BigDecimal workflowKillDays() {
-        return this.parametersJson.getValue("workflowKillDays", JsonValueType.NUMBER);
+        return this.workflowKillDays;
+    }
+
+    /**
+     * Return the number of documents processed in each task of Job ExpirationUpcomingTasks.  Tasks run
+     * concurrently, so a smaller number spreads the work over more tasks.  Optional; defaults to
+     * DEFAULT_TASK_SIZE.
+     * @return
+     */
+    public BigDecimal taskSize() {
+        return this.taskSize;
+    }
+
+    /**
+     * Return true if Job ExpirationUpcomingTasks should only report the work it would do, without
+     * starting or cancelling any workflows.  Optional; defaults to false.
+     * @return
+     */
+    public boolean dryRun() {
+        return this.dryRun;
+    }
+
+    /**
+     * Return true if Job ExpirationUpcomingTasks should find candidates in the expiration calendar
+     * (see ExpirationCalendar) rather than by querying documents.  Optional; defaults to false.
+     * @return
+     */
+    public boolean useExpirationCalendar() {
+        return this.useExpirationCalendar;
+    }
+
+    /**
+     * Return the maximum number of REST calls Job ExpirationUpcomingTasks may make to start workflows in
+     * one run; starts beyond the budget are deferred to the next run.  Optional; defaults to zero (no limit).
+     * @return
+     */
+    public BigDecimal startRestCallBudget() {
+        return this.startRestCallBudget;
+    }
+
+    /**
+     * Return the number of daily runs over which Job ExpirationUpcomingTasks spreads the workflow starts
+     * it finds.  Optional; defaults to one (start everything in one run).
+     * @return
+     */
+    public BigDecimal startWindowDays() {
+        return this.startWindowDays;
+    }
+
+    /**
+     * Return the log level of the REST calls made by Job ExpirationUpcomingTasks: one of Logger.DEBUG,
+     * Logger.INFO or Logger.ERROR, set as "DEBUG", "INFO" or "ERROR".  At DEBUG, request parameters and
+     * response bodies are logged.  Optional; defaults to INFO.
+     * @return
+     */
+    public int logLevel() {
+        return this.logLevel;
+    }
+
+    /**
+     * Return the maximum number of characters of a request parameter or response body written to the
+     * log at DEBUG level.  Optional; defaults to Logger.DEFAULT_MAX_LENGTH.
+     * @return
+     */
+    public BigDecimal maxLogBodyLength() {
+        return this.maxLogBodyLength;
+    }
+
+    private static int toLogLevel(String levelName) {
+        if ("DEBUG".equalsIgnoreCase(levelName)) {
+            return Logger.DEBUG;
+        }
+        if ("INFO".equalsIgnoreCase(levelName)) {
+            return Logger.INFO;
+        }
+        if ("ERROR".equalsIgnoreCase(levelName)) {
+            return Logger.ERROR;
+        }
+        throw new RollbackException(
+          ErrorType.OPERATION_FAILED,
+          "Parameter \"logLevel\" in parameter set \"" + PARAMETER_SET_NAME + "\" must be DEBUG, INFO or ERROR."
+        );
     }
 }
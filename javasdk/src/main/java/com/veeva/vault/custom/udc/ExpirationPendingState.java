@@ -0,0 +1,126 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.time.LocalDate;
+
+/**
+ * Run state for the ExpirationPending application, kept in the record named "ExpirationPendingWorkflowState"
+ * in object "VPROC Parameter Set".  The record is created on the first save if it does not exist.
+ *
+ * The state holds the high-water mark of the expiration date range already scanned for new workflows:
+ *   - lastExpirationDate: the end of the range scanned by the last successful run
+ *   - lastRunDate: the date of the last successful run
+ *   - pendingExpirationDate: the end of the range scanned by the current run; promoted to
+ *     lastExpirationDate by commit() when the run completes successfully
+ */
+
+@UserDefinedClassInfo
+public class ExpirationPendingState {
+
+    public static final String PARAMETER_SET_NAME = "ExpirationPendingWorkflowState";
+
+    private String recordId;
+    private LocalDate lastExpirationDate;
+    private LocalDate lastRunDate;
+    private LocalDate pendingExpirationDate;
+
+    public ExpirationPendingState() {
+
+      ParameterSetSnapshot snapshot = ParameterSetRegistry.find(PARAMETER_SET_NAME);
+      if (snapshot == null) {
+        return;
+      }
+
+      this.recordId = snapshot.getRecordId();
+      this.lastExpirationDate = getDate(snapshot, "lastExpirationDate");
+      this.lastRunDate = getDate(snapshot, "lastRunDate");
+      this.pendingExpirationDate = getDate(snapshot, "pendingExpirationDate");
+    }
+
+    /**
+     * Return the end of the expiration date range scanned by the last successful run, or null if
+     * there has not been one.
+     * @return LocalDate
+     */
+    public LocalDate lastExpirationDate() {
+      return this.lastExpirationDate;
+    }
+
+    /**
+     * Return the date of the last successful run, or null if there has not been one.
+     * @return LocalDate
+     */
+    public LocalDate lastRunDate() {
+      return this.lastRunDate;
+    }
+
+    /**
+     * Record the end of the expiration date range scanned by the current run, to be promoted
+     * by commit() once the run succeeds.
+     * @param pendingExpirationDate - LocalDate
+     */
+    public void begin(LocalDate pendingExpirationDate) {
+      this.pendingExpirationDate = pendingExpirationDate;
+      this.save();
+    }
+
+    /**
+     * Promote the pending expiration date of the current run to the high-water mark.
+     */
+    public void commit() {
+      if (this.pendingExpirationDate == null) {
+        return;
+      }
+      this.lastExpirationDate = this.pendingExpirationDate;
+      this.lastRunDate = LocalDate.now();
+      this.pendingExpirationDate = null;
+      this.save();
+    }
+
+    private void save() {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      Record record;
+
+      if (this.recordId == null) {
+        record = recordService.newRecord("vproc_parameter_set__c");
+        record.setValue("name__v", PARAMETER_SET_NAME);
+      } else {
+        record = recordService.newRecordWithId("vproc_parameter_set__c", this.recordId);
+      }
+
+      StringBuilder json = new StringBuilder("{");
+      appendDate(json, "lastExpirationDate", this.lastExpirationDate);
+      appendDate(json, "lastRunDate", this.lastRunDate);
+      appendDate(json, "pendingExpirationDate", this.pendingExpirationDate);
+      json.append("\n}");
+
+      record.setValue("parameters__c", json.toString());
+      Util.saveRecord(record);
+
+      ParameterSetRegistry.invalidate(PARAMETER_SET_NAME);
+
+      if (this.recordId == null) {
+        this.recordId = Util.getRecordID("vproc_parameter_set__c", "name__v", PARAMETER_SET_NAME);
+      }
+    }
+
+    private static LocalDate getDate(ParameterSetSnapshot snapshot, String name) {
+      String value = snapshot.getString(name, null);
+      return value == null ? null : LocalDate.parse(value);
+    }
+
+    private static void appendDate(StringBuilder json, String name, LocalDate value) {
+      if (value == null) {
+        return;
+      }
+      if (json.length() > 1) {
+        json.append(",");
+      }
+      json.append("\n   \"").append(name).append("\": \"").append(value.toString()).append("\"");
+    }
+}
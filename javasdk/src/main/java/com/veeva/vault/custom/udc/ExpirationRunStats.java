@@ -0,0 +1,71 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.job.JobLogger;
+
+/**
+ * Counts the work done, or planned, by a run of Job ExpirationUpcomingTasks: documents, VQL queries
+ * (QueryService and DocumentRoleService requests), REST calls (HTTP callouts to the Vault API), and
+ * the time taken by discovery.  Used to produce the dry-run report.
+ */
+
+@UserDefinedClassInfo
+public class ExpirationRunStats {
+
+    private int startDocuments = 0;
+    private int cancelDocuments = 0;
+    private int queries = 0;
+    private int restCalls = 0;
+    private long discoveryMillis = 0;
+
+    public ExpirationRunStats addStartDocuments(int count) {
+      this.startDocuments += count;
+      return this;
+    }
+
+    public ExpirationRunStats addCancelDocuments(int count) {
+      this.cancelDocuments += count;
+      return this;
+    }
+
+    public ExpirationRunStats addQueries(int count) {
+      this.queries += count;
+      return this;
+    }
+
+    public ExpirationRunStats addRestCalls(int count) {
+      this.restCalls += count;
+      return this;
+    }
+
+    public ExpirationRunStats setDiscoveryMillis(long discoveryMillis) {
+      this.discoveryMillis = discoveryMillis;
+      return this;
+    }
+
+    public int getQueries() {
+      return this.queries;
+    }
+
+    public int getRestCalls() {
+      return this.restCalls;
+    }
+
+    /**
+     * Return the number of batches needed for 'count' items in batches of 'batchSize'.
+     */
+    public static int batches(int count, int batchSize) {
+      return (count + batchSize - 1) / batchSize;
+    }
+
+    public void log(JobLogger logger, String heading) {
+      logger.log(heading);
+      logger.log("  documents to start:  " + this.startDocuments);
+      logger.log("  documents to cancel: " + this.cancelDocuments);
+      logger.log("  VQL queries:         " + this.queries);
+      logger.log("  REST calls:          " + this.restCalls);
+      if (this.discoveryMillis > 0) {
+        logger.log("  discovery time (ms): " + this.discoveryMillis);
+      }
+    }
+}
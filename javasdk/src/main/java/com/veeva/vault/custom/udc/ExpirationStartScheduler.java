@@ -0,0 +1,138 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Decides which of the workflow starts found by Job ExpirationUpcomingTasks are made in the current run,
+ * so that starts are spread over several runs instead of all firing at once.
+ *
+ * Candidates are ordered by Expiration Date, most urgent first.  Each candidate is due at most
+ * windowDays - 1 days after its start date (workflowStartDays before its Expiration Date), so that no
+ * start is deferred past the window.  A run makes at most:
+ *   - the smallest number of starts per run that starts every candidate by its due date, if windowDays
+ *     is greater than one: for each k from 1 to windowDays, the candidates due within the next k runs,
+ *     divided by k (rounded up).  Starts found together are therefore spread evenly over the window,
+ *     and candidates already due are all started, and
+ *   - restCallBudget / restCallsPerStart starts (at least one), if restCallBudget is greater than zero.
+ *     The budget is a hard limit, so a budget too low for the number of candidates can still defer
+ *     starts past their due date.
+ * A budget smaller than restCallsPerStart still allows one start per run, so that a low budget slows the
+ * starts down rather than stopping them for good.  The remaining candidates are deferred.
+ * highWaterMark() keeps the incremental scan from moving past the first deferred candidate, so the next
+ * run finds the deferred candidates again.
+ */
+
+@UserDefinedClassInfo
+public class ExpirationStartScheduler {
+
+    private int restCallBudget;
+    private int windowDays;
+    private int restCallsPerStart;
+    private int workflowStartDays;
+
+    private List<ExpirationWorkItem> scheduled = VaultCollections.newList();
+    private List<ExpirationWorkItem> deferred = VaultCollections.newList();
+
+    /**
+     * @param restCallBudget - int.  maximum REST calls for starts in one run; zero for no limit
+     * @param windowDays - int.  number of runs over which to spread the starts; one for no spreading
+     * @param restCallsPerStart - int.  REST calls needed to start one workflow
+     * @param workflowStartDays - int.  number of days before the Expiration Date that a workflow is due to start
+     */
+    public ExpirationStartScheduler(int restCallBudget, int windowDays, int restCallsPerStart, int workflowStartDays) {
+      this.restCallBudget = restCallBudget;
+      this.windowDays = windowDays;
+      this.restCallsPerStart = restCallsPerStart;
+      this.workflowStartDays = workflowStartDays;
+    }
+
+    /**
+     * Split the candidates into the starts scheduled for this run and the deferred starts.
+     * @param candidates - List<ExpirationWorkItem>.  start work items
+     */
+    public void schedule(List<ExpirationWorkItem> candidates) {
+
+      List<ExpirationWorkItem> ordered = VaultCollections.newList();
+      ordered.addAll(candidates);
+      ordered.sort(new ExpirationWorkItemComparator());
+
+      int limit = limit(ordered, LocalDate.now());
+
+      this.scheduled.clear();
+      this.deferred.clear();
+      for (ExpirationWorkItem item : ordered) {
+        if (this.scheduled.size() < limit) {
+          this.scheduled.add(item);
+        } else {
+          this.deferred.add(item);
+        }
+      }
+    }
+
+    /**
+     * Return the maximum number of starts in the run on the given date, for the candidates ordered by
+     * Expiration Date.
+     * @param ordered - List<ExpirationWorkItem>.  the candidates, most urgent first
+     * @param today - LocalDate.  the date of the run
+     * @return int
+     */
+    public int limit(List<ExpirationWorkItem> ordered, LocalDate today) {
+      int limit = ordered.size();
+      if (this.windowDays > 1) {
+        // the candidates are ordered by due date, so those due within k runs are a prefix of the list
+        limit = 0;
+        int dueCount = 0;
+        for (int k = 1; k <= this.windowDays; k++) {
+          LocalDate lastRunDate = today.plusDays(k - 1);
+          while (dueCount < ordered.size() && isDue(ordered.get(dueCount), lastRunDate)) {
+            dueCount++;
+          }
+          if (k == this.windowDays) {
+            dueCount = ordered.size();  // candidates due later are spread over the whole window
+          }
+          limit = Math.max(limit, (dueCount + k - 1) / k);
+        }
+      }
+      if (this.restCallBudget > 0) {
+        limit = Math.min(limit, Math.max(1, this.restCallBudget / this.restCallsPerStart));
+      }
+      return limit;
+    }
+
+    // Return true if the candidate must start by the given date: its due date, windowDays - 1 days after
+    // its start date, is on or before it.  Candidates without an Expiration Date are never due.
+    private boolean isDue(ExpirationWorkItem item, LocalDate date) {
+      LocalDate expirationDate = item.getExpirationDate();
+      if (expirationDate == null) {
+        return false;
+      }
+      LocalDate dueDate = expirationDate.minusDays(this.workflowStartDays).plusDays(this.windowDays - 1);
+      return !dueDate.isAfter(date);
+    }
+
+    public List<ExpirationWorkItem> getScheduled() {
+      return this.scheduled;
+    }
+
+    public List<ExpirationWorkItem> getDeferred() {
+      return this.deferred;
+    }
+
+    /**
+     * Return the high-water mark for the scan that ended at scannedTo: scannedTo if nothing was deferred,
+     * otherwise the day before the Expiration Date of the most urgent deferred candidate.
+     * @param scannedTo - LocalDate.  end of the expiration date range scanned by this run
+     * @return LocalDate
+     */
+    public LocalDate highWaterMark(LocalDate scannedTo) {
+      if (this.deferred.isEmpty()) {
+        return scannedTo;
+      }
+      LocalDate firstDeferred = this.deferred.get(0).getExpirationDate();
+      return firstDeferred.isBefore(scannedTo) ? firstDeferred.minusDays(1) : scannedTo;
+    }
+}
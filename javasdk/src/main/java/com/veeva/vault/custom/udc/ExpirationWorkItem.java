@@ -0,0 +1,273 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.job.JobItem;
+import com.veeva.vault.sdk.api.job.JobValueType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One unit of work for Job ExpirationUpcomingTasks: start an "Expiration Pending" workflow for a document,
+ * or cancel an "Expiration Pending" workflow task.
+ *
+ * Several work items of the same action are packed into a single JobItem (see writeAll/readAll), so that
+ * the job can control how much work goes into each job task.  Values of the n-th item are stored in the
+ * JobItem under "<name>.<n>".
+ *
+ * The outcome of processing the item is recorded with succeed(), fail() or unconfirmed(), as one of the
+ * JobCheckpoints outcomes.
+ */
+
+@UserDefinedClassInfo
+public class ExpirationWorkItem {
+
+    public static final String ACTION = "action";
+    public static final String ACTION_START = "start";
+    public static final String ACTION_CANCEL = "cancel";
+
+    private static final String COUNT = "count";
+
+    // message of a cancel accepted by an asynchronous Vault job that is not yet confirmed, followed by the job id
+    private static final String CANCEL_JOB_PREFIX = "Cancel job ";
+
+    private String action;
+    private String docId;
+    private String docNumber;
+    private String docVersionId;
+    private LocalDate expirationDate;
+    private BigDecimal taskDueDays;
+    private String pmUserIds;
+    private String taskId;
+
+    private String outcome;
+    private String message;
+
+    private ExpirationWorkItem(String action) {
+      this.action = action;
+    }
+
+    /**
+     * Return a work item to start an "Expiration Pending" workflow.
+     */
+    public static ExpirationWorkItem newStart(
+      String docNumber, String docVersionId, LocalDate expirationDate, BigDecimal taskDueDays
+    ) {
+      ExpirationWorkItem item = new ExpirationWorkItem(ACTION_START);
+      item.docNumber = docNumber;
+      item.docVersionId = docVersionId;
+      item.docId = new DocVersionIdParts(docVersionId).id;
+      item.expirationDate = expirationDate;
+      item.taskDueDays = taskDueDays;
+      return item;
+    }
+
+    /**
+     * Return a work item to cancel an "Expiration Pending" workflow task.
+     */
+    public static ExpirationWorkItem newCancel(String docId, String docNumber, String taskId) {
+      ExpirationWorkItem item = new ExpirationWorkItem(ACTION_CANCEL);
+      item.docId = docId;
+      item.docNumber = docNumber;
+      item.taskId = taskId;
+      return item;
+    }
+
+    /**
+     * Return the cancel work item with the given checkpoint key (see getCheckpointKey), e.g.
+     * "cancel:101_5678", and the message of its unconfirmed outcome, or null if the key is not a cancel.
+     */
+    public static ExpirationWorkItem fromCancelCheckpoint(String key, String message) {
+      String prefix = ACTION_CANCEL + ":";
+      int separator = key.indexOf('_');
+      if (!key.startsWith(prefix) || separator < 0) {
+        return null;
+      }
+      ExpirationWorkItem item = newCancel(key.substring(prefix.length(), separator), null, key.substring(separator + 1));
+      item.unconfirmed(message);
+      return item;
+    }
+
+    /**
+     * Pack a list of work items, all with the same action, into a JobItem.
+     * @param jobItem - JobItem.  a new JobItem
+     * @param items - List<ExpirationWorkItem>
+     */
+    public static void writeAll(JobItem jobItem, List<ExpirationWorkItem> items) {
+      jobItem.setValue(ACTION, items.get(0).action);
+      jobItem.setValue(COUNT, new BigDecimal(items.size()));
+      for (int i = 0; i < items.size(); i++) {
+        items.get(i).writeTo(jobItem, i);
+      }
+    }
+
+    /**
+     * Unpack the work items from a JobItem written by writeAll.
+     * @param jobItem - JobItem
+     * @return List<ExpirationWorkItem>
+     */
+    public static List<ExpirationWorkItem> readAll(JobItem jobItem) {
+      List<ExpirationWorkItem> items = VaultCollections.newList();
+      String action = jobItem.getValue(ACTION, JobValueType.STRING);
+      BigDecimal count = jobItem.getValue(COUNT, JobValueType.NUMBER);
+      if (action == null || count == null) {
+        return items;
+      }
+      for (int i = 0; i < count.intValue(); i++) {
+        ExpirationWorkItem item = new ExpirationWorkItem(action);
+        item.docId = jobItem.getValue(key("docId", i), JobValueType.STRING);
+        item.docNumber = jobItem.getValue(key("docNumber", i), JobValueType.STRING);
+        item.docVersionId = jobItem.getValue(key("docVersionId", i), JobValueType.STRING);
+        item.expirationDate = jobItem.getValue(key("expirationDate", i), JobValueType.DATE);
+        item.taskDueDays = jobItem.getValue(key("taskDueDays", i), JobValueType.NUMBER);
+        item.pmUserIds = jobItem.getValue(key("pmUserIds", i), JobValueType.STRING);
+        item.taskId = jobItem.getValue(key("taskId", i), JobValueType.STRING);
+        items.add(item);
+      }
+      return items;
+    }
+
+    private void writeTo(JobItem jobItem, int index) {
+      if (this.docId != null) {
+        jobItem.setValue(key("docId", index), this.docId);
+      }
+      if (this.docNumber != null) {
+        jobItem.setValue(key("docNumber", index), this.docNumber);
+      }
+      if (this.docVersionId != null) {
+        jobItem.setValue(key("docVersionId", index), this.docVersionId);
+      }
+      if (this.expirationDate != null) {
+        jobItem.setValue(key("expirationDate", index), this.expirationDate);
+      }
+      if (this.taskDueDays != null) {
+        jobItem.setValue(key("taskDueDays", index), this.taskDueDays);
+      }
+      if (this.pmUserIds != null) {
+        jobItem.setValue(key("pmUserIds", index), this.pmUserIds);
+      }
+      if (this.taskId != null) {
+        jobItem.setValue(key("taskId", index), this.taskId);
+      }
+    }
+
+    private static String key(String name, int index) {
+      return name + "." + index;
+    }
+
+    public String getAction() {
+      return this.action;
+    }
+
+    public boolean isStart() {
+      return ACTION_START.equals(this.action);
+    }
+
+    public boolean isCancel() {
+      return ACTION_CANCEL.equals(this.action);
+    }
+
+    public String getDocId() {
+      return this.docId;
+    }
+
+    public String getDocNumber() {
+      return this.docNumber;
+    }
+
+    public String getDocVersionId() {
+      return this.docVersionId;
+    }
+
+    public LocalDate getExpirationDate() {
+      return this.expirationDate;
+    }
+
+    public BigDecimal getTaskDueDays() {
+      return this.taskDueDays;
+    }
+
+    /**
+     * Return the comma-delimited user ids of the document's Project Managers.
+     */
+    public String getPmUserIds() {
+      return this.pmUserIds;
+    }
+
+    public void setPmUserIds(String pmUserIds) {
+      this.pmUserIds = pmUserIds;
+    }
+
+    public String getTaskId() {
+      return this.taskId;
+    }
+
+    /**
+     * Return a short description of the item for logs and task output, e.g. "PM-001234" or
+     * "PM-001234 (task 5678)".
+     */
+    public String getLabel() {
+      String label = this.docNumber == null ? this.docId : this.docNumber;
+      return this.taskId == null ? label : label + " (task " + this.taskId + ")";
+    }
+
+    /**
+     * Return the key that identifies this item in JobCheckpoints: the action, document version and
+     * expiration date for a start, e.g. "start:101_1_0_2026-12-31", or the action, document and
+     * workflow task for a cancel, e.g. "cancel:101_5678".  A start is keyed by expiration date so
+     * that a new expiration date of the same version, e.g. after an extension, starts a new workflow.
+     */
+    public String getCheckpointKey() {
+      if (isStart()) {
+        return this.action + ":" + this.docVersionId + "_" + this.expirationDate;
+      }
+      return this.action + ":" + this.docId + "_" + this.taskId;
+    }
+
+    public void succeed() {
+      this.outcome = JobCheckpoints.SUCCEEDED;
+      this.message = null;
+    }
+
+    public void fail(String message) {
+      this.outcome = JobCheckpoints.FAILED;
+      this.message = message;
+    }
+
+    /**
+     * The request was accepted but its result could not be confirmed during this run.
+     */
+    public void unconfirmed(String message) {
+      this.outcome = JobCheckpoints.UNCONFIRMED;
+      this.message = message;
+    }
+
+    /**
+     * The cancel request was accepted by asynchronous Vault job "jobId".  The outcome is unconfirmed
+     * until the job's status is checked (see getCancelJobId).
+     */
+    public void cancelRequested(BigDecimal jobId) {
+      unconfirmed(CANCEL_JOB_PREFIX + jobId.toPlainString());
+    }
+
+    /**
+     * Return the id of the Vault job that is cancelling this item's task, or null if the cancel is not
+     * waiting for a job.
+     */
+    public BigDecimal getCancelJobId() {
+      if (!JobCheckpoints.UNCONFIRMED.equals(this.outcome) || this.message == null || !this.message.startsWith(CANCEL_JOB_PREFIX)) {
+        return null;
+      }
+      return new BigDecimal(this.message.substring(CANCEL_JOB_PREFIX.length()));
+    }
+
+    public String getOutcome() {
+      return this.outcome;
+    }
+
+    public String getMessage() {
+      return this.message;
+    }
+}
@@ -0,0 +1,28 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+import java.time.LocalDate;
+
+/**
+ *  For sorting a list of Expiration work items by Expiration Date, earliest first.  Items without an
+ *  Expiration Date sort last.
+ */
+
+@UserDefinedClassInfo
+class ExpirationWorkItemComparator implements java.util.Comparator<ExpirationWorkItem> {
+    @Override
+    public int compare(ExpirationWorkItem a, ExpirationWorkItem b) {
+
+        LocalDate dateA = a.getExpirationDate();
+        LocalDate dateB = b.getExpirationDate();
+
+        if (dateA == null) {
+            return dateB == null ? 0 : 1;
+        } else if (dateB == null) {
+            return -1;
+        } else {
+            return dateA.compareTo(dateB);
+        }
+    }
+}
@@ -17,12 +17,16 @@ import java.util.List;
  *  Wrapper for HttpService, to make it easy to use the service.
  *
  *  Can make requests with a Connection, or local requests without.
+ *
+ *  Request parameters and response bodies are logged at DEBUG level only, and are truncated to
+ *  maxLogBodyLength characters.  The status line of each request is logged at INFO level.
  */
 
 @UserDefinedClassInfo
 public class HttpCallout {
 
   private String connectionName;
+  private int maxLogBodyLength = Logger.DEFAULT_MAX_LENGTH;
 
   public HttpCallout() {
     this.connectionName = null;
@@ -32,6 +36,16 @@ public class HttpCallout {
     this.connectionName = connectionName;
   }
 
+  /**
+   * Set the maximum number of characters of a parameter value or response body written to the log.
+   * @param maxLogBodyLength - int
+   * @return this HttpCallout
+   */
+  public HttpCallout setMaxLogBodyLength(int maxLogBodyLength) {
+    this.maxLogBodyLength = maxLogBodyLength;
+    return this;
+  }
+
   /**
    * Make an HTTP request that returns JSON.
    *
@@ -61,7 +75,9 @@ public class HttpCallout {
 
     if (params != null) {
       for (HttpParam param : params) {
-        logger.info(param.name + ": " + param.value);
+        if (logger.isDebugEnabled()) {
+          logger.debug(param.name + ": " + Logger.truncate(param.value, this.maxLogBodyLength));
+        }
         request.setBodyParam(param.name, param.value);
       }
     }
@@ -72,7 +88,9 @@ public class HttpCallout {
         logger.info("RESPONSE: " + responseCode);
 
         JsonData response = httpResponse.getResponseBody();
-        logger.info("RESPONSE: " + response);
+        if (logger.isDebugEnabled()) {
+          logger.debug("RESPONSE: " + Logger.truncate(String.valueOf(response), this.maxLogBodyLength));
+        }
 
         if (response.isValidJson()) {
           String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
@@ -97,9 +115,13 @@ public class HttpCallout {
       })
       .onError(httpOperationError -> {
         int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
-        logger.info("RESPONSE: " + responseCode);
-        logger.info(httpOperationError.getMessage());
-        logger.info(httpOperationError.getHttpResponse().getResponseBody());
+        logger.error("RESPONSE: " + responseCode);
+        logger.error(httpOperationError.getMessage());
+        if (logger.isDebugEnabled()) {
+          logger.debug(Logger.truncate(
+            String.valueOf(httpOperationError.getHttpResponse().getResponseBody()), this.maxLogBodyLength
+          ));
+        }
         httpResult.setError(ErrorType.OPERATION_FAILED, httpOperationError.getMessage());
       })
       .execute();
@@ -0,0 +1,198 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the outcome of each completed item of a job in object "VPROC Job Checkpoint"
+ * (vproc_job_checkpoint__c), so that a rerun after a partial failure can skip finished work and retry
+ * only the failures.  Any job can keep checkpoints, under its own job name and with its own item keys.
+ *
+ * Each checkpoint record is named "<jobName>:<item key>", and holds:
+ *   - outcome__c: one of SUCCEEDED, FAILED or UNCONFIRMED
+ *   - message__c: the error message, if any
+ *
+ * Outcomes are buffered with record() and written in one batch by save().
+ */
+
+@UserDefinedClassInfo
+public class JobCheckpoints {
+
+    private static final String OBJECT_NAME = "vproc_job_checkpoint__c";
+
+    // item outcomes
+    public static final String SUCCEEDED = "succeeded";
+    public static final String FAILED = "failed";
+    // the item's effect could not be confirmed; it is treated as finished for a day, then retried
+    public static final String UNCONFIRMED = "unconfirmed";
+
+    // maximum number of names in a single 'contains' filter
+    public static final int QUERY_CHUNK_SIZE = 200;
+
+    // maximum length of message__c
+    private static final int MESSAGE_MAX_LENGTH = 1500;
+
+    private String jobName;
+
+    // buffered outcomes and messages, keyed by checkpoint name
+    private Map<String, String> outcomes = VaultCollections.newMap();
+    private Map<String, String> messages = VaultCollections.newMap();
+
+    public JobCheckpoints(String jobName) {
+      this.jobName = jobName;
+    }
+
+    /**
+     * Return the subset of the item keys that are finished: they succeeded, or their outcome was
+     * unconfirmed less than a day ago.  Items whose last outcome was a failure are not finished.
+     * @param keys - List<String>.  item keys
+     * @return Set<String> - the finished item keys
+     */
+    public Set<String> findFinished(List<String> keys) {
+
+      Set<String> finished = VaultCollections.newSet();
+
+      List<String> names = VaultCollections.newList();
+      for (String key : keys) {
+        names.add(name(key));
+      }
+
+      String since = LocalDate.now().minusDays(1).toString() + "T00:00:00.000Z";
+
+      for (List<String> namesChunk : Util.partition(names, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select name__v from " + OBJECT_NAME +
+          " where name__v contains " + Util.vqlContains(namesChunk) +
+          "   and (outcome__c = '" + SUCCEEDED + "'" +
+          "     or (outcome__c = '" + UNCONFIRMED + "' and modified_date__v >= '" + since + "'))"
+        ).streamResults().iterator();
+        while (iter.hasNext()) {
+          String name = iter.next().getValue("name__v", ValueType.STRING);
+          finished.add(name.substring(this.jobName.length() + 1));
+        }
+      }
+
+      return finished;
+    }
+
+    /**
+     * Return the messages of this job's items whose outcome is unconfirmed, keyed by item key.
+     * @return Map<String, String> - message keyed by item key
+     */
+    public Map<String, String> findUnconfirmed() {
+
+      Map<String, String> messages = VaultCollections.newMap();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select name__v, message__c from " + OBJECT_NAME +
+        " where name__v like '" + this.jobName + ":%'" +
+        "   and outcome__c = '" + UNCONFIRMED + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        QueryExecutionResult result = iter.next();
+        String name = result.getValue("name__v", ValueType.STRING);
+        messages.put(name.substring(this.jobName.length() + 1), result.getValue("message__c", ValueType.STRING));
+      }
+
+      return messages;
+    }
+
+    /**
+     * Buffer the outcome of an item, to be written by save().
+     * @param key - String.  item key
+     * @param outcome - String.  SUCCEEDED, FAILED or UNCONFIRMED
+     * @param message - String.  error message, or null
+     */
+    public void record(String key, String outcome, String message) {
+      this.outcomes.put(name(key), outcome);
+      this.messages.put(name(key), message);
+    }
+
+    /**
+     * Write the buffered outcomes, updating existing checkpoint records and creating new ones.
+     */
+    public void save() {
+
+      if (this.outcomes.isEmpty()) {
+        return;
+      }
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      List<String> names = Util.toList(this.outcomes.keySet());
+
+      // existing checkpoint record ids, keyed by name
+      Map<String, String> recordIds = VaultCollections.newMap();
+      for (List<String> namesChunk : Util.partition(names, QUERY_CHUNK_SIZE)) {
+        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+          "select id, name__v from " + OBJECT_NAME + " where name__v contains " + Util.vqlContains(namesChunk)
+        ).streamResults().iterator();
+        while (iter.hasNext()) {
+          QueryExecutionResult result = iter.next();
+          recordIds.put(result.getValue("name__v", ValueType.STRING), result.getValue("id", ValueType.STRING));
+        }
+      }
+
+      List<Record> records = VaultCollections.newList();
+      for (String name : names) {
+        Record record;
+        if (recordIds.containsKey(name)) {
+          record = recordService.newRecordWithId(OBJECT_NAME, recordIds.get(name));
+        } else {
+          record = recordService.newRecord(OBJECT_NAME);
+          record.setValue("name__v", name);
+        }
+        record.setValue("outcome__c", this.outcomes.get(name));
+        record.setValue("message__c", Logger.truncate(this.messages.get(name), MESSAGE_MAX_LENGTH));
+        records.add(record);
+      }
+
+      for (List<Record> recordsChunk : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchSaveRecords(recordsChunk);
+      }
+
+      this.outcomes.clear();
+      this.messages.clear();
+    }
+
+    /**
+     * Delete this job's checkpoint records that have not been modified for the given number of days.
+     * @param retentionDays - int
+     * @return int - the number of records deleted
+     */
+    public int purge(int retentionDays) {
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      String before = LocalDate.now().minusDays(retentionDays).toString() + "T00:00:00.000Z";
+
+      List<Record> records = VaultCollections.newList();
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        "select id from " + OBJECT_NAME +
+        " where name__v like '" + this.jobName + ":%'" +
+        "   and modified_date__v < '" + before + "'"
+      ).streamResults().iterator();
+      while (iter.hasNext()) {
+        records.add(recordService.newRecordWithId(OBJECT_NAME, iter.next().getValue("id", ValueType.STRING)));
+      }
+
+      for (List<Record> recordsChunk : Util.partition(records, Util.RECORD_BATCH_SIZE)) {
+        Util.batchDeleteRecords(recordsChunk);
+      }
+
+      return records.size();
+    }
+
+    private String name(String key) {
+      return this.jobName + ":" + key;
+    }
+}
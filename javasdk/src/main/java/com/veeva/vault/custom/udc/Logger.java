@@ -8,13 +8,25 @@ import com.veeva.vault.sdk.api.job.JobLogger;
 /**
  * Generic logger to support LogService and JobLogger.  This is helpful when the code that
  * needs to log messages is not aware of the context in which it is executing (Job vs. Trigger/Action, etc.).
+ *
+ * Messages below the logger's level are discarded.  The default level is INFO.  Callers that build
+ * expensive messages (e.g. stringified JSON) should check isDebugEnabled()/isInfoEnabled() first, so the
+ * message is only built when it will actually be logged.
  */
 
 @UserDefinedClassInfo
 public class Logger {
 
+    public static final int DEBUG = 1;
+    public static final int INFO = 2;
+    public static final int ERROR = 3;
+
+    // default maximum length of a message body written with truncate()
+    public static final int DEFAULT_MAX_LENGTH = 1000;
+
     private JobLogger jobLogger;
     private LogService logService;
+    private int level = INFO;
 
     public Logger(JobLogger jobLogger) {
       this.jobLogger = jobLogger;
@@ -26,7 +38,32 @@ public class Logger {
       this.logService = ServiceLocator.locate(LogService.class);
     }
 
+    /**
+     * Set the threshold below which messages are discarded.
+     * @param level - int.  One of Logger.DEBUG, Logger.INFO, Logger.ERROR
+     * @return this Logger
+     */
+    public Logger setLevel(int level) {
+      this.level = level;
+      return this;
+    }
+
+    public int getLevel() {
+      return this.level;
+    }
+
+    public boolean isDebugEnabled() {
+      return this.level <= DEBUG;
+    }
+
+    public boolean isInfoEnabled() {
+      return this.level <= INFO;
+    }
+
     public void info(String message) {
+      if (!isInfoEnabled()) {
+        return;
+      }
       if (this.jobLogger != null) {
         this.jobLogger.log(message);
       }
@@ -41,10 +78,26 @@ public class Logger {
     }
 
     public void debug(String message) {
+      if (!isDebugEnabled()) {
+        return;
+      }
       if (this.jobLogger != null) {
         this.jobLogger.log(message);
       }
       this.logService.debug(message);
     }
 
-}
\ No newline at end of file
+    /**
+     * Return the message cut down to maxLength characters, with a note showing how much was dropped.
+     * @param message - String.  May be null.
+     * @param maxLength - int.  Maximum number of characters to keep.
+     * @return String
+     */
+    public static String truncate(String message, int maxLength) {
+      if (message == null || message.length() <= maxLength) {
+        return message;
+      }
+      return message.substring(0, maxLength) + "... [" + (message.length() - maxLength) + " more characters]";
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.json.JsonData;
+import com.veeva.vault.sdk.api.json.JsonService;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+/*
+  Registry of the parameter sets stored in object "VPROC Parameter Set" (vproc_parameter_set__c).
+
+  Each set is queried and parsed at most once per request, into a ParameterSetSnapshot that is cached
+  in the RequestContext.  Repeat reads in the same request (e.g. every ExpirationPendingParameters
+  created by a job phase) skip the query and the JSON parse.  The vproc_parameter_set__c trigger
+  invalidates the cached snapshot when the record is updated.
+
+  Static methods in this class:
+
+  get - Return the snapshot of a parameter set; throws if the set does not exist.
+  find - Return the snapshot of a parameter set, or null if the set does not exist.
+  parse - Parse parameters JSON into a snapshot, without caching it.
+  invalidate - Drop the cached snapshot of a parameter set.
+ */
+
+@UserDefinedClassInfo
+public class ParameterSetRegistry {
+
+    private static final String CACHE_KEY_PREFIX = "vprocParameterSet:";
+
+    /**
+     * Return the snapshot of a parameter set.  Throws a RollbackException if the set does not exist.
+     * @param name - String.  name__v of the "VPROC Parameter Set" record
+     * @return ParameterSetSnapshot
+     */
+    public static ParameterSetSnapshot get(String name) {
+      ParameterSetSnapshot snapshot = find(name);
+      if (snapshot == null) {
+        throw new RollbackException(ErrorType.OPERATION_FAILED, "Parameter set \"" + name + "\" does not exist.");
+      }
+      return snapshot;
+    }
+
+    /**
+     * Return the snapshot of a parameter set, or null if the set does not exist.
+     * @param name - String.  name__v of the "VPROC Parameter Set" record
+     * @return ParameterSetSnapshot
+     */
+    public static ParameterSetSnapshot find(String name) {
+
+      RequestContext requestContext = RequestContext.get();
+
+      ParameterSetSnapshot snapshot = requestContext.getValue(CACHE_KEY_PREFIX + name, ParameterSetSnapshot.class);
+      if (snapshot != null) {
+        return snapshot;
+      }
+
+      QueryExecutionResult result = QueryUtil.queryOne(
+        "select id, parameters__c from vproc_parameter_set__c where name__v = '" + name + "'"
+      );
+      if (result == null) {
+        return null;
+      }
+
+      snapshot = parse(
+        name,
+        result.getValue("id", ValueType.STRING),
+        result.getValue("parameters__c", ValueType.STRING)
+      );
+
+      requestContext.setValue(CACHE_KEY_PREFIX + name, snapshot);
+
+      return snapshot;
+    }
+
+    /**
+     * Parse parameters JSON into a snapshot, without caching it.  Throws a RollbackException if the
+     * JSON is not a valid JSON object.  An empty value is treated as an empty object.
+     * @param name - String.  name of the parameter set
+     * @param recordId - String.  id of the record, or null
+     * @param parametersJson - String.  the parameters__c value
+     * @return ParameterSetSnapshot
+     */
+    public static ParameterSetSnapshot parse(String name, String recordId, String parametersJson) {
+
+      JsonService jsonService = ServiceLocator.locate(JsonService.class);
+
+      String json = (parametersJson == null || parametersJson.trim().isEmpty()) ? "{}" : parametersJson;
+      JsonData jsonData = jsonService.readJson(json);
+
+      if (!jsonData.isValidJson()) {
+        throw new RollbackException(
+          ErrorType.OPERATION_FAILED,
+          "The parameters of parameter set \"" + name + "\" are not valid JSON."
+        );
+      }
+
+      return new ParameterSetSnapshot(name, recordId, jsonData.getJsonObject());
+    }
+
+    /**
+     * Drop the cached snapshot of a parameter set, so that the next read queries the record again.
+     * @param name - String.  name__v of the "VPROC Parameter Set" record
+     */
+    public static void invalidate(String name) {
+      RequestContext.get().setValue(CACHE_KEY_PREFIX + name, (ParameterSetSnapshot) null);
+    }
+}
@@ -0,0 +1,110 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultRuntimeException;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+
+import java.math.BigDecimal;
+
+/**
+ * An immutable, parsed copy of the parameters JSON of one record in object "VPROC Parameter Set".
+ * Snapshots are created and cached by ParameterSetRegistry.
+ *
+ * The typed getters validate the value they return, and throw a RollbackException naming the
+ * parameter set and parameter if the value is missing or has the wrong type.
+ */
+
+@UserDefinedClassInfo
+public class ParameterSetSnapshot implements RequestContextValue {
+
+    private final String name;
+    private final String recordId;
+    private final JsonObject parameters;
+
+    public ParameterSetSnapshot(String name, String recordId, JsonObject parameters) {
+      this.name = name;
+      this.recordId = recordId;
+      this.parameters = parameters;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public String getRecordId() {
+      return this.recordId;
+    }
+
+    public JsonObject getJson() {
+      return this.parameters;
+    }
+
+    public boolean contains(String parameter) {
+      return this.parameters.contains(parameter);
+    }
+
+    /**
+     * Return a required numeric parameter.
+     */
+    public BigDecimal getNumber(String parameter) {
+      BigDecimal value = null;
+      try {
+        value = this.parameters.getValue(parameter, JsonValueType.NUMBER);
+      } catch (VaultRuntimeException e) {
+        throw invalid(parameter, "must be a number");
+      }
+      if (value == null) {
+        throw invalid(parameter, "is required");
+      }
+      return value;
+    }
+
+    /**
+     * Return an optional numeric parameter, or defaultValue if it is not present.
+     */
+    public BigDecimal getNumber(String parameter, BigDecimal defaultValue) {
+      return contains(parameter) ? getNumber(parameter) : defaultValue;
+    }
+
+    /**
+     * Return an optional boolean parameter, or defaultValue if it is not present.
+     */
+    public boolean getBoolean(String parameter, boolean defaultValue) {
+      if (!contains(parameter)) {
+        return defaultValue;
+      }
+      Boolean value;
+      try {
+        value = this.parameters.getValue(parameter, JsonValueType.BOOLEAN);
+      } catch (VaultRuntimeException e) {
+        throw invalid(parameter, "must be true or false");
+      }
+      return value == null ? defaultValue : value.booleanValue();
+    }
+
+    /**
+     * Return an optional string parameter, or defaultValue if it is not present.
+     */
+    public String getString(String parameter, String defaultValue) {
+      if (!contains(parameter)) {
+        return defaultValue;
+      }
+      String value;
+      try {
+        value = this.parameters.getValue(parameter, JsonValueType.STRING);
+      } catch (VaultRuntimeException e) {
+        throw invalid(parameter, "must be a string");
+      }
+      return value == null ? defaultValue : value;
+    }
+
+    private RollbackException invalid(String parameter, String problem) {
+      return new RollbackException(
+        ErrorType.OPERATION_FAILED,
+        "Parameter \"" + parameter + "\" in parameter set \"" + this.name + "\" " + problem + "."
+      );
+    }
+}
@@ -7,9 +7,6 @@ import com.veeva.vault.sdk.api.data.RecordBatchSaveRequest;
 import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.json.JsonData;
-import com.veeva.vault.sdk.api.json.JsonObject;
-import com.veeva.vault.sdk.api.json.JsonService;
 import com.veeva.vault.sdk.api.query.*;
 import com.veeva.vault.sdk.api.role.DocumentRole;
 import com.veeva.vault.sdk.api.role.DocumentRoleService;
@@ -26,19 +23,21 @@ import java.util.Set;
 
   vqlContains - Return a String containing a VQL 'contains' filter surrounded by parenthises, e.g.:
      "('this', 'that', 'the other')".
+  vqlContainsNumbers - Return a String containing a VQL 'contains' filter of unquoted numeric values, e.g.: "(1,2,3)".
+  partition - Split a list into consecutive sub-lists of a maximum size.
   stringifyList - Return a comma-delimited string build from a list of strings.
   getRecordID - Return the ID of a record where the identified field contains the identified value.
   getRecordValue - Return a field value from an Object Record identified by the Record's ID.
   getTypeName - Return the API name of an object record's Object Type.
   getRoleId - Return the object record ID from the Application Role object where the record is for the Regulatory role.
   getUSCountryId - Return the record ID from the Country Object record for the United States.
-  getDocumentUsersInRole - Return the list of users currently occupying the role for a give document.
+  getDocumentsUsersInRole - Return the users currently occupying the role for each of a list of documents.
   getSinglePicklistValue - Return the value from a single-pick picklist field, or null if the field value is null.
   stringifyFieldValues - Concatenates a field value across one or more records in a query response.
   difference - Return a list of Strings from list1/set1 that are not also in list2/set2.
   getVaultDomain - Get the Domain Name part of the Vault's URL
-  getParameters - retrieve the application's parameters JSON from a record in object "VPROC Parameter Sets"
   saveRecords - executes batchsaverecords
+  createRecord - save a single new Record and return its id
   docVersionId.  Return a string containing the document version id, e.g. "101_1_5"
   batchDeleteRecords - delete a list of records
   deleteRecord - delete a single Record
@@ -49,6 +48,12 @@ import java.util.Set;
 @UserDefinedClassInfo
 public class Util {
 
+  // maximum number of documents in a single DocumentRoleService request
+  public static final int DOCUMENT_ROLES_BATCH_SIZE = 500;
+
+  // maximum number of records in a single RecordService batch request
+  public static final int RECORD_BATCH_SIZE = 500;
+
   /**
    * Return a String containing a VQL 'contains' filter surrounded by parenthises, e.g.:
    *      "('this', 'that', 'the other')".  The list is assumed to contain elements.
@@ -72,6 +77,36 @@ public class Util {
     return contains.toString();
   }
 
+  /**
+   * Return a String containing a VQL 'contains' filter of unquoted numeric values surrounded by
+   *      parenthises, e.g.: "(101,102,103)".  The list is assumed to contain elements.
+   * @param list - List<String> list of numeric items (e.g. document ids) to be included in the 'contains' filter.
+   * @return String - the 'contains' filter.
+   */
+  public static String vqlContainsNumbers(List<String> list) {
+    return "(" + stringifyList(list, ",") + ")";
+  }
+
+  /**
+   * Split a list into consecutive sub-lists, each containing at most 'size' elements.  Used to keep
+   * VQL 'contains' filters and batch requests within platform limits.
+   * @param list - List<T>
+   * @param size - int.  maximum number of elements in each sub-list
+   * @return List<List<T>>
+   */
+  public static <T> List<List<T>> partition(List<T> list, int size) {
+    List<List<T>> partitions = VaultCollections.newList();
+    List<T> partition = null;
+    for (T item : list) {
+      if (partition == null || partition.size() >= size) {
+        partition = VaultCollections.newList();
+        partitions.add(partition);
+      }
+      partition.add(item);
+    }
+    return partitions;
+  }
+
   /**
    * Return a comma-delimited string build from a list of strings, or null if the incoming list
    * is null.
@@ -176,22 +211,35 @@ public class Util {
     }
 
     /**
-     *  Return the list of users currently occupying the role for a give document.
-     * @param docVersionId in the form "id_major_minor", e.g. "539_0_6"
+     *  Return the users currently occupying the role for each of a list of documents, keyed by
+     *  document version id.  Roles are retrieved in bulk, in groups of DOCUMENT_ROLES_BATCH_SIZE documents.
+     * @param docVersionIds - List<String>. document version ids in the form "id_major_minor"
      * @param roleName - the API name of the role
-     * @return
+     * @return Map<String, List<String>>
      */
-    public static List<String> getDocumentUsersInRole(String docVersionId, String roleName) {
+    public static Map<String, List<String>> getDocumentsUsersInRole(List<String> docVersionIds, String roleName) {
 
       DocumentService documentService = ServiceLocator.locate(DocumentService.class);
       DocumentRoleService documentRoleService = ServiceLocator.locate(DocumentRoleService.class);
 
-      DocumentVersion docVersion = documentService.newVersionWithId(docVersionId);
-      GetDocumentRolesResponse response =
-        documentRoleService.getDocumentRoles(VaultCollections.asList(docVersion), roleName);
-      DocumentRole docRole = response.getDocumentRole(docVersion);
+      Map<String, List<String>> usersByDocVersion = VaultCollections.newMap();
+
+      for (List<String> docVersionIdsChunk : partition(docVersionIds, DOCUMENT_ROLES_BATCH_SIZE)) {
+
+        List<DocumentVersion> docVersions = VaultCollections.newList();
+        for (String docVersionId : docVersionIdsChunk) {
+          docVersions.add(documentService.newVersionWithId(docVersionId));
+        }
+
+        GetDocumentRolesResponse response = documentRoleService.getDocumentRoles(docVersions, roleName);
 
-      return docRole.getUsers();
+        for (int i = 0; i < docVersions.size(); i++) {
+          DocumentRole docRole = response.getDocumentRole(docVersions.get(i));
+          usersByDocVersion.put(docVersionIdsChunk.get(i), docRole.getUsers());
+        }
+      }
+
+      return usersByDocVersion;
     }
 
   /**
@@ -321,32 +369,6 @@ public class Util {
       return vaultInformation.getDns();
     }
 
-    /**
-     * retrieve the application's parameters JSON from a record in object "VPROC Parameter Set"
-     * @param appName String - name of application in the name__v column of the "VPROC Parameter Set" record.
-     * @return
-     */
-    public static JsonObject getParameters(String appName) {
-      JsonService jsonService = ServiceLocator.locate(JsonService.class);
-      QueryService queryService = ServiceLocator.locate(QueryService.class);
-
-      JsonData[] jsonData = {null};
-      QueryExecutionRequest qeRequest = queryService.newQueryExecutionRequestBuilder()
-        .withQueryString("select parameters__c from vproc_parameter_set__c where name__v = '"+appName+"'")
-        .build();
-      queryService.query(qeRequest)
-        .onSuccess(response -> {
-           QueryExecutionResult result = response.streamResults().findFirst().get();
-           jsonData[0] = jsonService.readJson(result.getValue("parameters__c", ValueType.STRING));
-        })
-        .onError(error -> {
-           throw new RollbackException(ErrorType.OPERATION_FAILED, error.getMessage());
-        })
-        .execute();
-
-      return jsonData[0].getJsonObject();
-    }
-
     /**
      * saveRecords.
      * @param records
@@ -379,6 +401,34 @@ public class Util {
     batchSaveRecords(VaultCollections.asList(record));
   }
 
+  /**
+   * Save a single new Record, and return the id assigned to it.
+   * @param record
+   * @return String - the new record id
+   */
+  public static String createRecord(Record record) {
+    RecordService recordService = ServiceLocator.locate(RecordService.class);
+    RecordBatchSaveRequest saveRequest = recordService
+      .newRecordBatchSaveRequestBuilder()
+      .withRecords(VaultCollections.asList(record))
+      .build();
+    List<String> recordIds = VaultCollections.newList();
+    recordService.batchSaveRecords(saveRequest)
+      .onSuccesses(positionalRecordIds -> {
+        positionalRecordIds.stream().forEach(positionalRecordId -> recordIds.add(positionalRecordId.getRecordId()));
+      })
+      .onErrors(batchOperationErrors ->{
+        batchOperationErrors.stream().findFirst().ifPresent(error -> {
+          String errMsg = error.getError().getMessage();
+          String name = record.getValue("name__v", ValueType.STRING);
+          throw new RollbackException(ErrorType.OPERATION_FAILED, "Unable to create: " + name +
+            " because of " + errMsg);
+        });
+      })
+      .execute();
+    return recordIds.get(0);
+  }
+
   /**
    *
    * @param records
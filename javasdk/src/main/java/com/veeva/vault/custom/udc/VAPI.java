@@ -29,7 +29,9 @@ import java.util.List;
 
  Methods in this class include:
    - cancelWorkflowTasks: initiate workflow actions on one or more workflows - cancel tasks
+   - getJobStatus: retrieve the status of an asynchronous Vault job, e.g. one started by cancelWorkflowTasks
    - executeUserAction: execute a document lifecycle user action
+   - executeObjectAction: execute an object user action (e.g. a lifecycle state change) on multiple records
    - query: execute a Vault API query
  */
 
@@ -38,6 +40,18 @@ public class VAPI {
 
   static final String APIVersion = "v21.3";
 
+  // maximum number of task ids accepted by a single "canceltasks" workflow action request
+  public static final int CANCEL_TASKS_MAX_BATCH = 500;
+
+  // maximum number of record ids accepted by a single object action request
+  public static final int OBJECT_ACTION_MAX_BATCH = 500;
+
+  // terminal statuses returned by getJobStatus
+  public static final String JOB_STATUS_SUCCESS = "SUCCESS";
+  public static final String JOB_STATUS_ERRORS_ENCOUNTERED = "ERRORS_ENCOUNTERED";
+  public static final String JOB_STATUS_CANCELLED = "CANCELLED";
+  public static final String JOB_STATUS_MISSED_SCHEDULE = "MISSED_SCHEDULE";
+
   private boolean succeeded;
   private String errorType;
   private String errorMessage;
@@ -46,6 +60,9 @@ public class VAPI {
 
   private Logger logger = new Logger();
 
+  // maximum number of characters of a request parameter or response body written to the log
+  private int maxLogBodyLength = Logger.DEFAULT_MAX_LENGTH;
+
   // use localHttpRequest to access the api
   public VAPI() {
     this.connection = null;
@@ -58,7 +75,27 @@ public class VAPI {
 
   public VAPI setJobLogger(JobLogger jobLogger) {
     //replace the default Logger with a new Logger that will include job logs
-    this.logger = new Logger(jobLogger);
+    this.logger = new Logger(jobLogger).setLevel(this.logger.getLevel());
+    return this;
+  }
+
+  /**
+   * Set the log level for HTTP callouts made by this instance.  Use Logger.DEBUG to include
+   * request parameters and (truncated) response bodies in the logs.
+   * @param level - int.  One of Logger.DEBUG, Logger.INFO, Logger.ERROR
+   */
+  public VAPI setLogLevel(int level) {
+    this.logger.setLevel(level);
+    return this;
+  }
+
+  /**
+   * Set the maximum number of characters of a request parameter or response body written to the
+   * log at DEBUG level, for HTTP callouts made by this instance.
+   * @param maxLogBodyLength - int
+   */
+  public VAPI setMaxLogBodyLength(int maxLogBodyLength) {
+    this.maxLogBodyLength = maxLogBodyLength;
     return this;
   }
 
@@ -82,7 +119,7 @@ public class VAPI {
    */
   public BigDecimal cancelWorkflowTasks(List<String> taskIds) {
 
-    HttpCallout httpCallout = new HttpCallout(this.connection);
+    HttpCallout httpCallout = newHttpCallout();
     List<HttpParam> params = VaultCollections.newList();
     HttpResult httpResult;
 
@@ -107,6 +144,47 @@ public class VAPI {
             .getValue("job_id", JsonValueType.NUMBER);
   }
 
+  /**
+   * Retrieve the status of an asynchronous Vault job, e.g. the job returned by cancelWorkflowTasks.
+   * @param jobId - BigDecimal - the Vault job_id
+   * @return String - job status, e.g. "RUNNING", "SUCCESS", "ERRORS_ENCOUNTERED"; null if the request failed
+   */
+  public String getJobStatus(BigDecimal jobId) {
+
+    HttpCallout httpCallout = newHttpCallout();
+    HttpResult httpResult;
+
+    this.succeeded = true;
+
+    String path = "/api/"+APIVersion+"/services/jobs/"+jobId.toPlainString();
+
+    httpResult = httpCallout.requestJson(HttpMethod.GET, path, this.logger);
+
+    if (httpResult.isError()) {
+      this.succeeded = false;
+      this.errorType = httpResult.getErrorType();
+      this.errorMessage = httpResult.getErrorMessage();
+      return null;
+    }
+
+    return httpResult
+            .getJsonObject()
+            .getValue("data", JsonValueType.OBJECT)
+            .getValue("status", JsonValueType.STRING);
+  }
+
+  /**
+   * Return true if the job status returned by getJobStatus indicates that the job is no longer running.
+   * @param jobStatus - String
+   * @return boolean
+   */
+  public static boolean isJobFinished(String jobStatus) {
+    return JOB_STATUS_SUCCESS.equals(jobStatus) ||
+      JOB_STATUS_ERRORS_ENCOUNTERED.equals(jobStatus) ||
+      JOB_STATUS_CANCELLED.equals(jobStatus) ||
+      JOB_STATUS_MISSED_SCHEDULE.equals(jobStatus);
+  }
+
   /**
    * Execute a Document Lifecycle User Action (workflow or state change).
    *
@@ -131,7 +209,7 @@ public class VAPI {
       .append(docVersionIdParts.minor)
       .append("/lifecycle_actions");
 
-    HttpCallout httpCallout = new HttpCallout(this.connection);
+    HttpCallout httpCallout = newHttpCallout();
 
     httpResult = httpCallout.requestJson(HttpMethod.GET, path.toString(), this.logger);
 
@@ -178,6 +256,55 @@ public class VAPI {
     this.executeUserAction(docVersionId, actionLabel, emptyParamsList);
   }
 
+  /**
+   * Execute an object user action, such as a lifecycle state change, on up to OBJECT_ACTION_MAX_BATCH
+   * records of an object.  Return the ids of the records for which the action failed; the request
+   * itself failed if failed() returns true.
+   *
+   * @param objectName - String - the object, e.g. "agenda__c"
+   * @param actionName - String - the action name, e.g. "Objectlifecyclestateuseraction.agenda__c.active_state__c.deactivate__c"
+   * @param recordIds - List<String> - the record ids
+   * @return List<String> - ids of the records for which the action failed
+   */
+  public List<String> executeObjectAction(String objectName, String actionName, List<String> recordIds) {
+
+    HttpCallout httpCallout = newHttpCallout();
+    List<HttpParam> params = VaultCollections.newList();
+    HttpResult httpResult;
+
+    List<String> failedIds = VaultCollections.newList();
+
+    this.succeeded = true;
+
+    String path = "/api/"+APIVersion+"/vobjects/"+objectName+"/actions/"+actionName;
+
+    params.add(new HttpParam("ids", Util.stringifyList(recordIds, ",")));
+
+    httpResult = httpCallout.requestJson(HttpMethod.POST, path, params, this.logger);
+
+    if (httpResult.isError()) {
+      this.succeeded = false;
+      this.errorType = httpResult.getErrorType();
+      this.errorMessage = httpResult.getErrorMessage();
+      return failedIds;
+    }
+
+    JsonObject response = httpResult.getJsonObject();
+    if (!response.contains("data")) {
+      return failedIds;
+    }
+
+    JsonArray data = response.getValue("data", JsonValueType.ARRAY);
+    for (int i = 0; i < data.getSize(); i++) {
+      JsonObject result = data.getValue(i, JsonValueType.OBJECT);
+      if (!"SUCCESS".equals(result.getValue("responseStatus", JsonValueType.STRING))) {
+        failedIds.add(result.getValue("id", JsonValueType.STRING));
+      }
+    }
+
+    return failedIds;
+  }
+
   /**
    * Execute a Vault API query.
    *
@@ -185,7 +312,7 @@ public class VAPI {
    */
   public JsonArray executeQuery(String query) {
 
-    HttpCallout httpCallout = new HttpCallout(this.connection);
+    HttpCallout httpCallout = newHttpCallout();
     List<HttpParam> params = VaultCollections.newList();
     HttpResult httpResult;
 
@@ -207,5 +334,9 @@ public class VAPI {
     return httpResult.getJsonObject().getValue("data", JsonValueType.ARRAY);
   }
 
+  private HttpCallout newHttpCallout() {
+    return new HttpCallout(this.connection).setMaxLogBodyLength(this.maxLogBodyLength);
+  }
+
 }
 